@@ -0,0 +1,62 @@
+package ch.uzh.ifi.hase.soprafs23.benchmark;
+
+import ch.uzh.ifi.hase.soprafs23.Application;
+import ch.uzh.ifi.hase.soprafs23.audit.AuditTrail;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost the audit trail adds to a login (POST /registered): the service call with the audit
+ * trail on and off, against the in-memory database. With the trail on, a login puts one
+ * event into the ring buffer after its commit; the batched writing and the fsync happen on
+ * the writer thread. The events written and dropped are printed at the end of a run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class LoginAuditBenchmark {
+
+    @Param({"true", "false"})
+    private boolean audit;
+
+    private ConfigurableApplicationContext context;
+
+    private UserService userService;
+
+    private User login;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                // arguments, so that they win over application.properties
+                .run("--logging.level.root=WARN", "--audit.enabled=" + audit);
+        userService = context.getBean(UserService.class);
+        User user = new User();
+        user.setUsername("benchmark");
+        user.setPassword("password");
+        userService.createUser(user);
+        login = new User();
+        login.setUsername("benchmark");
+        login.setPassword("password");
+    }
+
+    @Benchmark
+    public User login() {
+        return userService.getUser(login);
+    }
+
+    @TearDown
+    public void tearDown() {
+        AuditTrail auditTrail = context.getBean(AuditTrail.class);
+        System.out.printf("%naudit %s: %d events written, %d dropped%n",
+                audit ? "on" : "off", auditTrail.getWritten(), auditTrail.getDropped());
+        context.close();
+    }
+}
@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs23.benchmark;
+
+import ch.uzh.ifi.hase.soprafs23.Application;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Registrations (POST /users) per second from concurrent clients with the USER table on 1,
+ * 2 and 4 shards, each an own in-memory database. Every registration writes to the home
+ * shard of its username only, so with enough cores the throughput grows with the shards as
+ * long as the database writes are the bottleneck; on a single core the runs only show the
+ * cost of the routing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(8)
+public class ShardedRegistrationBenchmark {
+
+    @Param({"1", "2", "4"})
+    private int shards;
+
+    private final AtomicLong registrations = new AtomicLong();
+
+    private ConfigurableApplicationContext context;
+
+    private UserService userService;
+
+    @Setup
+    public void setup() {
+        String urls = IntStream.range(0, shards)
+                .mapToObj(shard -> "jdbc:h2:mem:benchmark-shard" + shard)
+                .collect(Collectors.joining(","));
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                // arguments, so that they win over application.properties
+                .run("--logging.level.root=WARN", "--audit.enabled=false",
+                        "--users.sharding.enabled=true", "--users.sharding.urls=" + urls);
+        userService = context.getBean(UserService.class);
+    }
+
+    @Benchmark
+    public User register() {
+        User user = new User();
+        user.setUsername("benchmark-" + registrations.incrementAndGet());
+        user.setPassword("password");
+        return userService.createUser(user);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%n%d shards: %d users registered%n", shards, registrations.get());
+        context.close();
+    }
+}
@@ -0,0 +1,121 @@
+package ch.uzh.ifi.hase.soprafs23.benchmark;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTOList;
+import ch.uzh.ifi.hase.soprafs23.rest.mapper.UserGetDTOListSerializer;
+import ch.uzh.ifi.hase.soprafs23.rest.mapper.UserSummaryListSerializer;
+import ch.uzh.ifi.hase.soprafs23.service.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs23.service.UserDirectory;
+import ch.uzh.ifi.hase.soprafs23.session.LocalSessionStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap held for 1M users and cost of listing them:
+ * - entities: the users as User entities, listed like GET /users by UserGetDTOListSerializer
+ * - directory: the users in the UserDirectory, listed like GET /users?view=summary
+ * The heap retained by the users is printed at the start of a run. It is a lower bound for
+ * the entities, which Hibernate additionally keeps in the persistence context or the
+ * second-level cache. Run with -prof gc for the allocations per listing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(jvmArgsAppend = "-Xmx2g")
+public class UserDirectoryFootprintBenchmark {
+
+    @Param({"entities", "directory"})
+    private String view;
+
+    @Param("1000000")
+    private int users;
+
+    private List<User> entities;
+
+    private UserDirectory directory;
+
+    private ObjectMapper applicationMapper;
+
+    // unlike OutputStream.nullOutputStream() it stays usable after Jackson closes it
+    private final OutputStream out = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setup() {
+        long before = usedHeap();
+        if (view.equals("entities")) {
+            entities = new ArrayList<>(users);
+            for (int i = 0; i < users; i++) {
+                entities.add(user(i, new User()));
+            }
+        }
+        else {
+            directory = new UserDirectory(null, null, null, new LocalSessionStore());
+            // the directory only keeps what it copies out of the user
+            User user = new User();
+            for (int i = 0; i < users; i++) {
+                directory.onUserChanged(UserChangedEvent.created(user(i, user)));
+            }
+        }
+        long retained = usedHeap() - before;
+        System.out.printf("%n%s: %d MB retained for %d users, %d bytes per user%n",
+                view, retained >> 20, users, retained / users);
+
+        // configured like Spring Boot's ObjectMapper (ISO dates instead of timestamps)
+        SimpleModule listModule = new SimpleModule()
+                .addSerializer(new UserGetDTOListSerializer())
+                .addSerializer(new UserSummaryListSerializer());
+        applicationMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .modules(new AfterburnerModule(), listModule)
+                .build();
+    }
+
+    @Benchmark
+    public void list() throws IOException {
+        if (entities != null) {
+            applicationMapper.writeValue(out, new UserGetDTOList(entities));
+        }
+        else {
+            applicationMapper.writeValue(out, directory.getSummaries(null));
+        }
+    }
+
+    private static User user(int i, User user) {
+        user.setId((long) i + 1);
+        user.setUsername("user" + i);
+        user.setPassword("password" + i);
+        user.setToken(UUID.randomUUID().toString());
+        user.setStatus(i % 4 == 0 ? UserStatus.ONLINE : UserStatus.OFFLINE);
+        user.setCreation_date(new Date(1_600_000_000_000L + i * 1000L));
+        return user;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
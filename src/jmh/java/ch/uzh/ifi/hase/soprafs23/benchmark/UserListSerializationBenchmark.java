@@ -0,0 +1,105 @@
+package ch.uzh.ifi.hase.soprafs23.benchmark;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTOList;
+import ch.uzh.ifi.hase.soprafs23.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs23.rest.mapper.UserGetDTOListSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing GET /users for 10k users:
+ * - dtoList: the previous path, DTOMapper builds a UserGetDTO list that Jackson writes reflectively
+ * - dtoListAfterburner: the same list written with Afterburner's generated accessors
+ * - userGetDTOListSerializer: the current path, users are written directly by UserGetDTOListSerializer
+ * All variants write into a discarding stream, so only mapping and serialization are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class UserListSerializationBenchmark {
+
+    @Param("10000")
+    private int users;
+
+    private List<User> entities;
+
+    private ObjectMapper defaultMapper;
+
+    private ObjectMapper afterburnerMapper;
+
+    private ObjectMapper applicationMapper;
+
+    // unlike OutputStream.nullOutputStream() it stays usable after Jackson closes it
+    private final OutputStream out = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setup() {
+        entities = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            User user = new User();
+            user.setId((long) i);
+            user.setUsername("user" + i);
+            user.setPassword("password" + i);
+            user.setToken("token-" + i);
+            user.setStatus(i % 2 == 0 ? UserStatus.ONLINE : UserStatus.OFFLINE);
+            user.setCreation_date(new Date(1_600_000_000_000L + i));
+            user.setBirthday(i % 3 == 0 ? null : new Date(900_000_000_000L + i));
+            entities.add(user);
+        }
+
+        // configured like Spring Boot's ObjectMapper (ISO dates instead of timestamps)
+        defaultMapper = mapperBuilder().build();
+        afterburnerMapper = mapperBuilder().modules(new AfterburnerModule()).build();
+        SimpleModule userListModule = new SimpleModule().addSerializer(new UserGetDTOListSerializer());
+        applicationMapper = mapperBuilder().modules(new AfterburnerModule(), userListModule).build();
+    }
+
+    @Benchmark
+    public void dtoList() throws IOException {
+        defaultMapper.writeValue(out, toDTOs());
+    }
+
+    @Benchmark
+    public void dtoListAfterburner() throws IOException {
+        afterburnerMapper.writeValue(out, toDTOs());
+    }
+
+    @Benchmark
+    public void userGetDTOListSerializer() throws IOException {
+        applicationMapper.writeValue(out, new UserGetDTOList(entities));
+    }
+
+    private static Jackson2ObjectMapperBuilder mapperBuilder() {
+        return Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    private List<UserGetDTO> toDTOs() {
+        List<UserGetDTO> userGetDTOs = new ArrayList<>(entities.size());
+        for (User user : entities) {
+            userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+        }
+        return userGetDTOs;
+    }
+}
@@ -0,0 +1,112 @@
+package ch.uzh.ifi.hase.soprafs23.benchmark;
+
+import ch.uzh.ifi.hase.soprafs23.Application;
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPatchDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cost of changing the status of a user:
+ * - put: PUT /users/{id}, the UserPutDTO path that sets username, birthday and status and saves the user
+ * - patchStatus: PATCH /users/{id} with {"status": ...}, only the status member is applied
+ * Both run against the service layer of the application with the in-memory database, with
+ * the second-level cache on and off. Besides the time, the statements sent to the database
+ * (round trips) and the bytes of their SQL text are printed per update at the end of a run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class UserUpdateBenchmark {
+
+    @Param({"true", "false"})
+    private boolean secondLevelCache;
+
+    private ConfigurableApplicationContext context;
+
+    private UserService userService;
+
+    private long userId;
+
+    private boolean online;
+
+    private long updates;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                // arguments, so that they win over application.properties
+                .run("--logging.level.root=WARN",
+                        "--spring.jpa.properties.hibernate.cache.use_second_level_cache=" + secondLevelCache,
+                        "--spring.jpa.properties.hibernate.session_factory.statement_inspector=" + SqlCounter.class.getName());
+        userService = context.getBean(UserService.class);
+        User user = new User();
+        user.setUsername("benchmark");
+        user.setPassword("password");
+        userId = userService.createUser(user).getId();
+        SqlCounter.reset();
+    }
+
+    @Benchmark
+    public void put() {
+        UserPutDTO userPutDTO = new UserPutDTO();
+        userPutDTO.setUsername("benchmark");
+        userPutDTO.setBirthday("01.01.2000");
+        userPutDTO.setStatus(nextStatus().name());
+        userService.updateUserProfile(userPutDTO, userId);
+        updates++;
+    }
+
+    @Benchmark
+    public void patchStatus() {
+        UserPatchDTO userPatchDTO = new UserPatchDTO();
+        userPatchDTO.setStatus(nextStatus().name());
+        userService.patchUserProfile(userPatchDTO, userId);
+        updates++;
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%n%.2f statements, %.0f SQL bytes per update (second-level cache %s)%n",
+                SqlCounter.statements.doubleValue() / updates, SqlCounter.bytes.doubleValue() / updates,
+                secondLevelCache ? "on" : "off");
+        context.close();
+    }
+
+    private UserStatus nextStatus() {
+        online = !online;
+        return online ? UserStatus.ONLINE : UserStatus.OFFLINE;
+    }
+
+    /**
+     * Counts every statement Hibernate prepares, registered through hibernate.session_factory.statement_inspector.
+     */
+    public static class SqlCounter implements StatementInspector {
+
+        static final LongAdder statements = new LongAdder();
+
+        static final LongAdder bytes = new LongAdder();
+
+        static void reset() {
+            statements.reset();
+            bytes.reset();
+        }
+
+        @Override
+        public String inspect(String sql) {
+            statements.increment();
+            bytes.add(sql.length());
+            return sql;
+        }
+    }
+}
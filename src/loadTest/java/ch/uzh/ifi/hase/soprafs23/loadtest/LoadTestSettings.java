@@ -0,0 +1,124 @@
+package ch.uzh.ifi.hase.soprafs23.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Load Test Settings
+ * Reads loadtest.properties from the classpath, system properties with the same key win.
+ */
+class LoadTestSettings {
+
+    private static final String PREFIX = "loadtest.";
+
+    private static final String SCENARIO_PREFIX = PREFIX + "scenario.";
+
+    private final Properties properties = new Properties();
+
+    LoadTestSettings() {
+        try (InputStream in = LoadTestSettings.class.getResourceAsStream("/loadtest.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.getProperties().forEach((key, value) -> {
+            if (key.toString().startsWith(PREFIX)) {
+                properties.setProperty(key.toString(), value.toString());
+            }
+        });
+    }
+
+    Duration duration() {
+        return Duration.ofSeconds(getLong("duration-seconds"));
+    }
+
+    Duration warmup() {
+        return Duration.ofSeconds(getLong("warmup-seconds"));
+    }
+
+    int concurrency() {
+        return (int) getLong("concurrency");
+    }
+
+    int seedUsers() {
+        return (int) getLong("seed-users");
+    }
+
+    double loginFailureRatio() {
+        return getDouble("login.failure-ratio");
+    }
+
+    int bulkProfileIds() {
+        return (int) getLong("bulk-profile.ids");
+    }
+
+    /**
+     * @return names of all configured scenarios, sorted
+     */
+    List<String> scenarios() {
+        return properties.stringPropertyNames().stream()
+                .filter(key -> key.startsWith(SCENARIO_PREFIX))
+                .map(key -> key.substring(SCENARIO_PREFIX.length()))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Parses a mix such as "profile:9,bulk-profile:1" into operation weights.
+     */
+    Map<Operation, Integer> mix(String scenario) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : require(SCENARIO_PREFIX + scenario).split(",")) {
+            String[] parts = entry.trim().split(":");
+            weights.put(Operation.fromKey(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    double p99MillisThreshold(String scenario) {
+        return getThreshold(scenario, "p99-millis");
+    }
+
+    double errorRateThreshold(String scenario) {
+        return getThreshold(scenario, "error-rate");
+    }
+
+    double shedRateThreshold(String scenario) {
+        return getThreshold(scenario, "shed-rate");
+    }
+
+    double minThroughputThreshold(String scenario) {
+        return getThreshold(scenario, "min-throughput");
+    }
+
+    private double getThreshold(String scenario, String name) {
+        String override = properties.getProperty(PREFIX + "threshold." + scenario + "." + name);
+        return Double.parseDouble(override != null ? override : require(PREFIX + "threshold." + name));
+    }
+
+    private long getLong(String name) {
+        return Long.parseLong(require(PREFIX + name));
+    }
+
+    private double getDouble(String name) {
+        return Double.parseDouble(require(PREFIX + name));
+    }
+
+    private String require(String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IllegalStateException("Missing load-test setting " + key);
+        }
+        return value.trim();
+    }
+}
@@ -0,0 +1,32 @@
+package ch.uzh.ifi.hase.soprafs23.loadtest;
+
+/**
+ * The requests a load-test client can send, see UserApiClient for how each one is built.
+ */
+enum Operation {
+    REGISTER("register"),
+    LOGIN("login"),
+    PROFILE("profile"),
+    BULK_PROFILE("bulk-profile"),
+    LIST("list"),
+    EDIT("edit");
+
+    private final String key;
+
+    Operation(String key) {
+        this.key = key;
+    }
+
+    String key() {
+        return key;
+    }
+
+    static Operation fromKey(String key) {
+        for (Operation operation : values()) {
+            if (operation.key.equals(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown load-test operation " + key);
+    }
+}
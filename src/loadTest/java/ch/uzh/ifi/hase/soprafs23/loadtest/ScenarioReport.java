@@ -0,0 +1,179 @@
+package ch.uzh.ifi.hase.soprafs23.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Scenario Report
+ * Result of one scenario run, written as JSON to build/reports/loadtest/&lt;scenario&gt;.json.
+ * Latencies are in milliseconds, throughput in requests per second.
+ */
+public class ScenarioReport {
+
+    private final String scenario;
+
+    private final int concurrency;
+
+    private final double durationSeconds;
+
+    private final Figures total;
+
+    private final Map<String, Figures> operations = new LinkedHashMap<>();
+
+    private Admission admission;
+
+    ScenarioReport(String scenario, int concurrency, double durationSeconds, Figures total) {
+        this.scenario = scenario;
+        this.concurrency = concurrency;
+        this.durationSeconds = durationSeconds;
+        this.total = total;
+    }
+
+    void addOperation(Operation operation, Figures figures) {
+        operations.put(operation.key(), figures);
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public Figures getTotal() {
+        return total;
+    }
+
+    public Map<String, Figures> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return how the concurrency limit of the server moved during the scenario, null if admission control is off
+     */
+    public Admission getAdmission() {
+        return admission;
+    }
+
+    void setAdmission(Admission admission) {
+        this.admission = admission;
+    }
+
+    public static class Figures {
+
+        private final long requests;
+
+        private final long errors;
+
+        private final double errorRate;
+
+        // answered with 503 by the admission control, not counted as errors
+        private final long shed;
+
+        private final double shedRate;
+
+        private final double throughput;
+
+        private final double p50Millis;
+
+        private final double p99Millis;
+
+        private final double p999Millis;
+
+        private final double maxMillis;
+
+        Figures(Histogram latenciesMicros, long errors, long shed, double durationSeconds) {
+            this.requests = latenciesMicros.getTotalCount();
+            this.errors = errors;
+            this.errorRate = requests == 0 ? 0 : (double) errors / requests;
+            this.shed = shed;
+            this.shedRate = requests == 0 ? 0 : (double) shed / requests;
+            this.throughput = durationSeconds == 0 ? 0 : requests / durationSeconds;
+            this.p50Millis = latenciesMicros.getValueAtPercentile(50) / 1000.0;
+            this.p99Millis = latenciesMicros.getValueAtPercentile(99) / 1000.0;
+            this.p999Millis = latenciesMicros.getValueAtPercentile(99.9) / 1000.0;
+            this.maxMillis = latenciesMicros.getMaxValue() / 1000.0;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getErrorRate() {
+            return errorRate;
+        }
+
+        public long getShed() {
+            return shed;
+        }
+
+        public double getShedRate() {
+            return shedRate;
+        }
+
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getP999Millis() {
+            return p999Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+    }
+
+    public static class Admission {
+
+        private final int minLimit;
+
+        private final int maxLimit;
+
+        private final int finalLimit;
+
+        private final long rejected;
+
+        Admission(int minLimit, int maxLimit, int finalLimit, long rejected) {
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.finalLimit = finalLimit;
+            this.rejected = rejected;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public int getFinalLimit() {
+            return finalLimit;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ch.uzh.ifi.hase.soprafs23.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Scenario Runner
+ * Plays a weighted mix of operations with a fixed number of closed-loop clients: every client
+ * sends its next request as soon as the previous one has been answered. Requests sent during
+ * the warm-up are not recorded.
+ */
+class ScenarioRunner {
+
+    // latencies are recorded in microseconds, up to one minute
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final UserApiClient client;
+
+    private final LoadTestSettings settings;
+
+    ScenarioRunner(UserApiClient client, LoadTestSettings settings) {
+        this.client = client;
+        this.settings = settings;
+    }
+
+    ScenarioReport run(String scenario) throws Exception {
+        Map<Operation, Integer> mix = settings.mix(scenario);
+        Operation[] operations = mix.keySet().toArray(new Operation[0]);
+        int[] cumulativeWeights = new int[operations.length];
+        int totalWeight = 0;
+        for (int i = 0; i < operations.length; i++) {
+            totalWeight += mix.get(operations[i]);
+            cumulativeWeights[i] = totalWeight;
+        }
+
+        Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+        Map<Operation, LongAdder> shed = new EnumMap<>(Operation.class);
+        for (Operation operation : operations) {
+            latencies.put(operation, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+            errors.put(operation, new LongAdder());
+            shed.put(operation, new LongAdder());
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + settings.warmup().toNanos();
+        long end = measureFrom + settings.duration().toNanos();
+        int weightSum = totalWeight;
+
+        ExecutorService executor = Executors.newFixedThreadPool(settings.concurrency());
+        try {
+            List<Future<?>> clients = new ArrayList<>();
+            for (int i = 0; i < settings.concurrency(); i++) {
+                clients.add(executor.submit(() -> {
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        Operation operation = pick(operations, cumulativeWeights, weightSum);
+                        boolean success;
+                        boolean rejected = false;
+                        try {
+                            success = client.execute(operation);
+                        }
+                        catch (UserApiClient.ShedException e) {
+                            // overload protection working as intended, counted apart from errors
+                            success = true;
+                            rejected = true;
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return null;
+                        }
+                        catch (Exception e) {
+                            success = false;
+                        }
+                        if (now >= measureFrom) {
+                            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - now);
+                            latencies.get(operation).recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+                            if (!success) {
+                                errors.get(operation).increment();
+                            }
+                            if (rejected) {
+                                shed.get(operation).increment();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : clients) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        double seconds = settings.duration().toMillis() / 1000.0;
+        Histogram all = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+        long allErrors = 0;
+        long allShed = 0;
+        for (Operation operation : operations) {
+            all.add(latencies.get(operation));
+            allErrors += errors.get(operation).sum();
+            allShed += shed.get(operation).sum();
+        }
+
+        ScenarioReport report = new ScenarioReport(scenario, settings.concurrency(), seconds,
+                new ScenarioReport.Figures(all, allErrors, allShed, seconds));
+        for (Operation operation : operations) {
+            report.addOperation(operation, new ScenarioReport.Figures(latencies.get(operation),
+                    errors.get(operation).sum(), shed.get(operation).sum(), seconds));
+        }
+        return report;
+    }
+
+    private static Operation pick(Operation[] operations, int[] cumulativeWeights, int totalWeight) {
+        int ticket = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = 0; i < operations.length; i++) {
+            if (ticket < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+}
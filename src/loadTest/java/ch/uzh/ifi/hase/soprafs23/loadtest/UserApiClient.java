@@ -0,0 +1,162 @@
+package ch.uzh.ifi.hase.soprafs23.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * User API Client
+ * Sends the requests of the load-test operations against a running server. Users that are
+ * registered during the run are remembered, so later logins, reads and edits hit real rows.
+ */
+class UserApiClient {
+
+    private static final String PASSWORD = "loadtest-password";
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final URI baseUri;
+
+    private final LoadTestSettings settings;
+
+    private final AtomicLong usernameSequence = new AtomicLong();
+
+    private final List<KnownUser> knownUsers = new CopyOnWriteArrayList<>();
+
+    UserApiClient(URI baseUri, LoadTestSettings settings) {
+        this.baseUri = baseUri;
+        this.settings = settings;
+    }
+
+    /**
+     * Registers users outside the measured phase.
+     */
+    void seed(int users) throws IOException, InterruptedException {
+        for (int i = 0; i < users; i++) {
+            HttpResponse<String> response = register();
+            if (response.statusCode() != 201) {
+                throw new IllegalStateException("Seeding failed with status " + response.statusCode());
+            }
+        }
+    }
+
+    /**
+     * Sends one request of the given operation.
+     *
+     * @return true if the server answered as expected (intentionally failed logins must be rejected)
+     */
+    boolean execute(Operation operation) throws IOException, InterruptedException {
+        switch (operation) {
+            case REGISTER:
+                return register().statusCode() == 201;
+            case LOGIN:
+                return login();
+            case PROFILE:
+                return send(get("/users/" + randomUser().id())).statusCode() == 200;
+            case BULK_PROFILE:
+                return send(get("/users?ids=" + randomIds())).statusCode() == 200;
+            case LIST:
+                return send(get("/users")).statusCode() == 200;
+            case EDIT:
+                return edit();
+            default:
+                throw new IllegalArgumentException("Unsupported operation " + operation);
+        }
+    }
+
+    private HttpResponse<String> register() throws IOException, InterruptedException {
+        String username = "loadtest-" + usernameSequence.incrementAndGet() + "-" + System.nanoTime();
+        HttpResponse<String> response = send(post("/users", credentials(username, PASSWORD)));
+        if (response.statusCode() == 201) {
+            JsonNode created = objectMapper.readTree(response.body());
+            knownUsers.add(new KnownUser(created.get("id").asLong(), username));
+        }
+        return response;
+    }
+
+    private boolean login() throws IOException, InterruptedException {
+        boolean failOnPurpose = ThreadLocalRandom.current().nextDouble() < settings.loginFailureRatio();
+        String password = failOnPurpose ? "wrong-" + PASSWORD : PASSWORD;
+        int status = send(post("/registered", credentials(randomUser().username(), password))).statusCode();
+        return failOnPurpose ? status == 401 : status == 202;
+    }
+
+    private boolean edit() throws IOException, InterruptedException {
+        KnownUser user = randomUser();
+        String status = ThreadLocalRandom.current().nextBoolean() ? "ONLINE" : "OFFLINE";
+        String body = objectMapper.writeValueAsString(Map.of("birthday", "01.01.2000", "status", status));
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/users/" + user.id()))
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return send(request).statusCode() == 204;
+    }
+
+    private String credentials(String username, String password) {
+        try {
+            return objectMapper.writeValueAsString(Map.of("username", username, "password", password));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String randomIds() {
+        StringJoiner ids = new StringJoiner(",");
+        for (int i = 0; i < settings.bulkProfileIds(); i++) {
+            ids.add(Long.toString(randomUser().id()));
+        }
+        return ids.toString();
+    }
+
+    private KnownUser randomUser() {
+        return knownUsers.get(ThreadLocalRandom.current().nextInt(knownUsers.size()));
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(TIMEOUT).GET().build();
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 503 && response.headers().firstValue("Retry-After").isPresent()) {
+            throw new ShedException();
+        }
+        return response;
+    }
+
+    /**
+     * The request was turned away by the admission control of the server (503 with Retry-After).
+     */
+    static class ShedException extends IOException {
+    }
+
+    private record KnownUser(long id, String username) {
+    }
+}
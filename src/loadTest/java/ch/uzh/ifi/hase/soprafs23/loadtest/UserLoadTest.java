@@ -0,0 +1,109 @@
+package ch.uzh.ifi.hase.soprafs23.loadtest;
+
+import ch.uzh.ifi.hase.soprafs23.admission.AdmissionControlFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.io.File;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * UserLoadTest
+ * Boots the application on a random port against the in-memory H2 database and plays every
+ * scenario configured in loadtest.properties. Each scenario writes a JSON report and fails
+ * when its p99 latency, error rate, shed rate or throughput misses the configured thresholds.
+ * Run with ./gradlew loadTest (not part of ./gradlew build).
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class UserLoadTest {
+
+    private static final LoadTestSettings SETTINGS = new LoadTestSettings();
+
+    private static UserApiClient client;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectProvider<AdmissionControlFilter> admissionControl;
+
+    static List<String> scenarios() {
+        return SETTINGS.scenarios();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("scenarios")
+    public void scenario_withinThresholds(String scenario) throws Exception {
+        // given -> registered users for logins, reads and edits
+        if (client == null) {
+            client = new UserApiClient(URI.create("http://localhost:" + port), SETTINGS);
+            client.seed(SETTINGS.seedUsers());
+        }
+
+        // when -> the concurrency limit of the server is sampled while the scenario runs
+        AdmissionControlFilter filter = admissionControl.getIfAvailable();
+        ScenarioReport report;
+        if (filter == null) {
+            report = new ScenarioRunner(client, SETTINGS).run(scenario);
+        }
+        else {
+            AtomicInteger minLimit = new AtomicInteger(filter.getLimit());
+            AtomicInteger maxLimit = new AtomicInteger(filter.getLimit());
+            long rejectedBefore = filter.getRejected();
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            sampler.scheduleAtFixedRate(() -> {
+                minLimit.accumulateAndGet(filter.getLimit(), Math::min);
+                maxLimit.accumulateAndGet(filter.getLimit(), Math::max);
+            }, 0, 100, TimeUnit.MILLISECONDS);
+            try {
+                report = new ScenarioRunner(client, SETTINGS).run(scenario);
+            }
+            finally {
+                sampler.shutdownNow();
+            }
+            report.setAdmission(new ScenarioReport.Admission(minLimit.get(), maxLimit.get(), filter.getLimit(),
+                    filter.getRejected() - rejectedBefore));
+        }
+        writeReport(report);
+
+        // then
+        ScenarioReport.Figures total = report.getTotal();
+        double maxP99 = SETTINGS.p99MillisThreshold(scenario);
+        double maxErrorRate = SETTINGS.errorRateThreshold(scenario);
+        double maxShedRate = SETTINGS.shedRateThreshold(scenario);
+        double minThroughput = SETTINGS.minThroughputThreshold(scenario);
+        assertAll(scenario,
+                () -> assertTrue(total.getP99Millis() <= maxP99,
+                        String.format("p99 %.1f ms exceeds %.1f ms", total.getP99Millis(), maxP99)),
+                () -> assertTrue(total.getErrorRate() <= maxErrorRate,
+                        String.format("error rate %.4f exceeds %.4f", total.getErrorRate(), maxErrorRate)),
+                () -> assertTrue(total.getShedRate() <= maxShedRate,
+                        String.format("shed rate %.4f exceeds %.4f", total.getShedRate(), maxShedRate)),
+                () -> assertTrue(total.getThroughput() >= minThroughput,
+                        String.format("throughput %.1f req/s is below %.1f req/s", total.getThroughput(), minThroughput)));
+    }
+
+    private static void writeReport(ScenarioReport report) throws Exception {
+        File directory = new File(System.getProperty("loadtest.report.dir", "build/reports/loadtest"));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Could not create " + directory);
+        }
+        new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(new File(directory, report.getScenario() + ".json"), report);
+    }
+}
@@ -1,5 +1,7 @@
 package ch.uzh.ifi.hase.soprafs23;
 
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -24,12 +26,19 @@ public class Application {
     return "The application is running.";
   }
 
+  // replaces Jackson's reflective getter calls with generated accessors, picked up by Spring Boot's ObjectMapper
+  @Bean
+  public Module afterburnerModule() {
+    return new AfterburnerModule();
+  }
+
   @Bean
   public WebMvcConfigurer corsConfigurer() {
     return new WebMvcConfigurer() {
       @Override
       public void addCorsMappings(CorsRegistry registry) {
-        registry.addMapping("/**").allowedOrigins("*").allowedMethods("*");
+        // the client reads the cursor of the next page of GET /users from this header
+        registry.addMapping("/**").allowedOrigins("*").allowedMethods("*").exposedHeaders("X-Next-Cursor");
       }
     };
   }
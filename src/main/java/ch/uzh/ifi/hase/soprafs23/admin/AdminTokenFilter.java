@@ -0,0 +1,59 @@
+package ch.uzh.ifi.hase.soprafs23.admin;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Guards everything under /admin (user export and import, audit trail, flight recordings):
+ * requests must carry the configured admin.token in the X-Admin-Token header, others are
+ * answered with 401. Without a configured token the admin endpoints are refused with 403.
+ * Runs before the admission control, so rejected requests do not take up its limit.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+public class AdminTokenFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "X-Admin-Token";
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    private final byte[] token;
+
+    public AdminTokenFilter(@Value("${admin.token:}") String token) {
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !urlPathHelper.getPathWithinApplication(request).startsWith("/admin/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (token.length == 0) {
+            response.sendError(HttpStatus.FORBIDDEN.value(), "The admin endpoints are disabled, set admin.token to enable them!");
+            return;
+        }
+        String provided = request.getHeader(HEADER);
+        // compared in constant time, so the response time does not give away how much of a guess was right
+        if (provided == null || !MessageDigest.isEqual(token, provided.getBytes(StandardCharsets.UTF_8))) {
+            response.sendError(HttpStatus.UNAUTHORIZED.value(), String.format("A valid %s header is required!", HEADER));
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+}
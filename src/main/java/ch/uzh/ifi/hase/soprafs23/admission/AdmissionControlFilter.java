@@ -0,0 +1,163 @@
+package ch.uzh.ifi.hase.soprafs23.admission;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control in front of the user endpoints. Instead of letting Tomcat queue every
+ * request until all endpoints are slow, at most admission.* limit requests are processed at
+ * once and the rest is answered right away with 503 and a Retry-After header. The limit
+ * follows the measured response times, see {@link GradientLimit}.
+ * Each {@link PriorityClass} may only use a share of the limit (admission.share.*), so under
+ * overload the list and export requests are turned away first and logins and profile reads
+ * last. The limit, the requests in flight and the rejections are published on the actuator
+ * as admission.limit, admission.inflight and admission.rejected.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnProperty(name = "admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionControlFilter extends OncePerRequestFilter implements MeterBinder {
+
+    private final GradientLimit limit;
+
+    private final Map<PriorityClass, Double> shares = new EnumMap<>(PriorityClass.class);
+
+    private final Map<PriorityClass, AtomicLong> rejected = new EnumMap<>(PriorityClass.class);
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private final String retryAfterSeconds;
+
+    public AdmissionControlFilter(@Value("${admission.initial-limit:20}") int initialLimit,
+                                  @Value("${admission.min-limit:4}") int minLimit,
+                                  @Value("${admission.max-limit:200}") int maxLimit,
+                                  @Value("${admission.rtt-tolerance:2.0}") double rttTolerance,
+                                  @Value("${admission.smoothing:0.2}") double smoothing,
+                                  @Value("${admission.long-window:600}") int longWindow,
+                                  @Value("${admission.share.normal:0.9}") double normalShare,
+                                  @Value("${admission.share.bulk:0.5}") double bulkShare,
+                                  @Value("${admission.retry-after-seconds:1}") int retryAfterSeconds) {
+        this.limit = new GradientLimit(initialLimit, minLimit, maxLimit, rttTolerance, smoothing, longWindow);
+        this.shares.put(PriorityClass.CRITICAL, 1.0);
+        this.shares.put(PriorityClass.NORMAL, normalShare);
+        this.shares.put(PriorityClass.BULK, bulkShare);
+        for (PriorityClass priorityClass : PriorityClass.values()) {
+            this.rejected.put(priorityClass, new AtomicLong());
+        }
+        this.retryAfterSeconds = Integer.toString(retryAfterSeconds);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return PriorityClass.of(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        PriorityClass priorityClass = PriorityClass.of(request);
+        int admitted = inflight.incrementAndGet();
+        if (admitted > Math.max(1, (int) (limit.getLimit() * shares.get(priorityClass)))) {
+            inflight.decrementAndGet();
+            rejected.get(priorityClass).incrementAndGet();
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "The server is overloaded, please retry later!");
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            async = request.isAsyncStarted();
+        }
+        finally {
+            if (async) {
+                // e.g. the export streams on after this thread has returned
+                request.getAsyncContext().addListener(new ReleaseOnCompletion());
+            }
+            else {
+                inflight.decrementAndGet();
+                // failures say nothing about the queueing, they often fail fast
+                if (response.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+                    limit.onSample(priorityClass, System.nanoTime() - start, admitted);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("admission.limit", limit, GradientLimit::getLimit)
+                .description("Current concurrency limit of the user endpoints")
+                .register(registry);
+        Gauge.builder("admission.inflight", inflight, AtomicInteger::get)
+                .description("Admitted requests that are being processed")
+                .register(registry);
+        for (PriorityClass priorityClass : PriorityClass.values()) {
+            String tag = priorityClass.name().toLowerCase(Locale.ROOT);
+            FunctionCounter.builder("admission.rejected", rejected.get(priorityClass), AtomicLong::get)
+                    .description("Requests answered with 503 because the limit of their priority class was reached")
+                    .tag("class", tag)
+                    .register(registry);
+            Gauge.builder("admission.rtt.long", limit, l -> l.getLongRttMillis(priorityClass))
+                    .description("Long-term average response time in milliseconds, the baseline of the limit")
+                    .tag("class", tag)
+                    .register(registry);
+        }
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public long getRejected() {
+        return rejected.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    private final class ReleaseOnCompletion implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            inflight.decrementAndGet();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // onComplete follows
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            // onComplete follows
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ch.uzh.ifi.hase.soprafs23.admission;
+
+/**
+ * Concurrency limit that follows the gradient of the response times: a short-term average
+ * (the last ~10 requests) is compared with a long-term one (the last longWindow requests).
+ * As long as the short-term average stays within tolerance times the long-term one, the
+ * limit grows by sqrt(limit); when the responses get slower than that, the limit is scaled
+ * down by the ratio of the two (at most halved per sample). Every change is smoothed.
+ * Both averages are kept per priority class since a list request is naturally slower than a
+ * profile read. Comparing with a long-term average rather than with the fastest response ever
+ * seen (as TCP Vegas does) keeps steady contention, e.g. a load generator on the same
+ * machine, from being mistaken for queueing; only a change for the worse shrinks the limit.
+ */
+final class GradientLimit {
+
+    private static final double SHORT_WINDOW = 10;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private final double smoothing;
+
+    private final double longFactor;
+
+    private final double[] shortRttNanos = new double[PriorityClass.values().length];
+
+    private final double[] longRttNanos = new double[PriorityClass.values().length];
+
+    private double limit;
+
+    GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing, int longWindow) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.longFactor = 2.0 / (longWindow + 1);
+        this.limit = initialLimit;
+    }
+
+    /**
+     * @param rttNanos response time of a completed request
+     * @param inflight requests in flight when it was admitted, including itself
+     */
+    synchronized void onSample(PriorityClass priorityClass, long rttNanos, int inflight) {
+        int index = priorityClass.ordinal();
+        double rtt = Math.max(1, rttNanos);
+        if (longRttNanos[index] == 0) {
+            shortRttNanos[index] = rtt;
+            longRttNanos[index] = rtt;
+            return;
+        }
+        shortRttNanos[index] += 2.0 / (SHORT_WINDOW + 1) * (rtt - shortRttNanos[index]);
+        longRttNanos[index] += longFactor * (rtt - longRttNanos[index]);
+        // after an overload the long-term average would take long to come back down, so it is pulled along
+        if (longRttNanos[index] > 2 * shortRttNanos[index]) {
+            longRttNanos[index] *= 0.95;
+        }
+
+        // a limit that is not even half used says nothing about the capacity
+        if (inflight * 2 < limit) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos[index] / shortRttNanos[index]));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + target * smoothing));
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized double getLongRttMillis(PriorityClass priorityClass) {
+        return longRttNanos[priorityClass.ordinal()] / 1e6;
+    }
+}
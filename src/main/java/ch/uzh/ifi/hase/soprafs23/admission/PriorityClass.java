@@ -0,0 +1,49 @@
+package ch.uzh.ifi.hase.soprafs23.admission;
+
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.regex.Pattern;
+
+/**
+ * Priority classes of the admission control, in the order in which they are shed under
+ * overload: BULK first, CRITICAL last.
+ */
+public enum PriorityClass {
+
+    // logins and profile reads, what players wait for in the game UI
+    CRITICAL,
+    // registrations and profile edits
+    NORMAL,
+    // the user list, statistics, avatars and the admin export/import
+    BULK;
+
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+
+    private static final Pattern USER_PATH = Pattern.compile("/users/-?\\d+");
+
+    /**
+     * @return the class of the request, null for requests that are not admission controlled
+     * (actuator, JFR endpoints, error pages)
+     */
+    static PriorityClass of(HttpServletRequest request) {
+        String path = URL_PATH_HELPER.getPathWithinApplication(request);
+        String method = request.getMethod();
+        if ("/registered".equals(path)) {
+            return CRITICAL;
+        }
+        if ("/users".equals(path)) {
+            if (!"GET".equals(method)) {
+                return NORMAL;
+            }
+            return request.getParameter("ids") != null ? CRITICAL : BULK;
+        }
+        if (USER_PATH.matcher(path).matches()) {
+            return "GET".equals(method) ? CRITICAL : NORMAL;
+        }
+        if (path.startsWith("/users/") || path.startsWith("/avatars/") || path.startsWith("/admin/users/")) {
+            return BULK;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,82 @@
+package ch.uzh.ifi.hase.soprafs23.audit;
+
+/**
+ * One entry of the audit trail. The sequence number is assigned when the entry is written
+ * to the {@link AuditLog}, it is -1 while the entry still waits in the buffer.
+ */
+public final class AuditEvent {
+
+    public enum Type {
+        REGISTERED, LOGGED_IN, LOGIN_FAILED, PROFILE_CHANGED
+    }
+
+    // longer usernames (only possible in failed logins) and details are cut off
+    static final int MAX_TEXT_LENGTH = 1024;
+
+    private final long sequence;
+
+    private final long timestamp;
+
+    private final Type type;
+
+    private final long userId;
+
+    private final String username;
+
+    private final String detail;
+
+    AuditEvent(long sequence, long timestamp, Type type, long userId, String username, String detail) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.userId = userId;
+        this.username = truncate(username);
+        this.detail = truncate(detail);
+    }
+
+    static AuditEvent of(Type type, Long userId, String username, String detail) {
+        return new AuditEvent(-1, System.currentTimeMillis(), type, userId == null ? -1 : userId, username, detail);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return milliseconds since the epoch at which the service recorded the event
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the id of the user, -1 for failed logins of unknown usernames
+     */
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    private static String truncate(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+    }
+
+    @Override
+    public String toString() {
+        return "AuditEvent{" + sequence + " " + type + " user " + userId + " " + username + " " + detail + "}";
+    }
+}
@@ -0,0 +1,302 @@
+package ch.uzh.ifi.hase.soprafs23.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only audit log in a directory of fixed-size segment files. The current segment is
+ * memory-mapped, so appending an entry is a copy into the page cache; {@link #force()} writes
+ * it to the disk. A segment is named after the sequence number of its first entry
+ * (00000000000000000042.audit). When an entry does not fit any more, the log continues in a
+ * new segment and only the newest maxSegments are kept.
+ * Each entry is laid out as
+ * <pre>
+ * int length | int crc32 | long sequence | long timestamp | byte type | long userId
+ *   | short n + n bytes username (UTF-8) | short n + n bytes detail (UTF-8)
+ * </pre>
+ * where length and crc32 cover everything after them. The payload is written before the
+ * length, and the unused rest of a segment is zero, so a zero length marks the end. An entry
+ * with a wrong checksum, e.g. torn by a crash before the last force, also ends the log; the
+ * writer overwrites it when it reopens the directory.
+ * The appending methods must be called by a single thread, {@link #read} by any.
+ */
+public class AuditLog implements Closeable {
+
+    private static final String SUFFIX = ".audit";
+
+    private static final long MAGIC = 0x534f5041_55444954L; // "SOPAUDIT"
+
+    private static final int HEADER_BYTES = Long.BYTES;
+
+    private static final int ENTRY_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private static final int FIXED_PAYLOAD_BYTES = 3 * Long.BYTES + 1 + 2 * Short.BYTES;
+
+    static final int MIN_SEGMENT_BYTES = HEADER_BYTES + ENTRY_HEADER_BYTES + FIXED_PAYLOAD_BYTES
+            + 2 * 3 * AuditEvent.MAX_TEXT_LENGTH;
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final int maxSegments;
+
+    private final FileChannel lockChannel;
+
+    private final FileLock lock;
+
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+
+    private MappedByteBuffer segment;
+
+    private long nextSequence;
+
+    private boolean dirty;
+
+    /**
+     * Opens the log in the given directory and continues after its last intact entry.
+     *
+     * @throws IllegalStateException if another writer has the directory open
+     */
+    public AuditLog(Path directory, int segmentBytes, int maxSegments) throws IOException {
+        if (segmentBytes < MIN_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Audit segments must have at least " + MIN_SEGMENT_BYTES + " bytes");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.lockChannel = FileChannel.open(directory.resolve("writer.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        }
+        catch (OverlappingFileLockException e) {
+            // held by this process
+            acquired = null;
+        }
+        this.lock = acquired;
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("The audit log in " + directory + " is used by another process");
+        }
+
+        List<Path> segments = segments();
+        if (segments.isEmpty()) {
+            openSegment(0);
+        }
+        else {
+            recover(segments.get(segments.size() - 1));
+        }
+    }
+
+    /**
+     * Appends the entry, continuing in a new segment if it does not fit into the current one.
+     *
+     * @return the sequence number of the entry
+     */
+    public long append(AuditEvent event) throws IOException {
+        byte[] username = event.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] detail = event.getDetail().getBytes(StandardCharsets.UTF_8);
+        int payloadBytes = FIXED_PAYLOAD_BYTES + username.length + detail.length;
+        if (segment.remaining() < ENTRY_HEADER_BYTES + payloadBytes) {
+            rotate();
+        }
+        long sequence = nextSequence++;
+        int start = segment.position();
+        segment.position(start + ENTRY_HEADER_BYTES);
+        segment.putLong(sequence)
+                .putLong(event.getTimestamp())
+                .put((byte) event.getType().ordinal())
+                .putLong(event.getUserId())
+                .putShort((short) username.length).put(username)
+                .putShort((short) detail.length).put(detail);
+        crc.reset();
+        crc.update(segment.duplicate().position(start + ENTRY_HEADER_BYTES).limit(segment.position()));
+        segment.putInt(start + Integer.BYTES, (int) crc.getValue());
+        // last, so that the entry only becomes visible complete
+        segment.putInt(start, payloadBytes);
+        dirty = true;
+        return sequence;
+    }
+
+    /**
+     * Writes the appended entries of the current segment to the disk (fsync).
+     *
+     * @return false if there was nothing to write
+     */
+    public boolean force() {
+        if (!dirty) {
+            return false;
+        }
+        segment.force();
+        dirty = false;
+        return true;
+    }
+
+    /**
+     * @return the sequence number the next appended entry gets
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Reads entries in the order they were appended, starting at the given sequence number.
+     * Entries of segments that have been deleted by the rotation are skipped.
+     */
+    public List<AuditEvent> read(long fromSequence, int limit) throws IOException {
+        List<AuditEvent> events = new ArrayList<>();
+        CRC32 readCrc = new CRC32();
+        List<Path> segments = segments();
+        int first = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            if (baseSequence(segments.get(i)) <= fromSequence) {
+                first = i;
+            }
+        }
+        for (int i = first; i < segments.size() && events.size() < limit; i++) {
+            ByteBuffer buffer;
+            // mapped read-only, so only the pages that are read are touched and nothing is copied
+            try (FileChannel file = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            }
+            catch (NoSuchFileException e) {
+                // deleted by the rotation in the meantime
+                continue;
+            }
+            if (buffer.remaining() < HEADER_BYTES || buffer.getLong() != MAGIC) {
+                continue;
+            }
+            AuditEvent event;
+            while (events.size() < limit && (event = readEntry(buffer, readCrc)) != null) {
+                if (event.getSequence() >= fromSequence) {
+                    events.add(event);
+                }
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            force();
+            channel.close();
+        }
+        finally {
+            lock.release();
+            lockChannel.close();
+        }
+    }
+
+    private void rotate() throws IOException {
+        force();
+        channel.close();
+        openSegment(nextSequence);
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    private void openSegment(long baseSequence) throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", baseSequence, SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.putLong(MAGIC);
+        nextSequence = baseSequence;
+        dirty = true;
+    }
+
+    /**
+     * Continues the given (last) segment after its last intact entry.
+     */
+    private void recover(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentBytes, channel.size()));
+        nextSequence = baseSequence(file);
+        if (segment.getLong() != MAGIC) {
+            throw new IOException(file + " is not an audit log segment");
+        }
+        AuditEvent event;
+        while ((event = readEntry(segment, crc)) != null) {
+            nextSequence = event.getSequence() + 1;
+        }
+        // pages may reach the disk in any order, so anything after the last intact entry
+        // would otherwise be taken for the continuation of the entries appended from now on
+        int end = segment.position();
+        for (int i = end; i < segment.limit(); i++) {
+            if (segment.get(i) != 0) {
+                segment.put(i, (byte) 0);
+                dirty = true;
+            }
+        }
+        force();
+    }
+
+    /**
+     * @return the next entry, or null (the position left at its start) at the end of the written data
+     */
+    private static AuditEvent readEntry(ByteBuffer buffer, CRC32 crc) {
+        int start = buffer.position();
+        if (buffer.remaining() < ENTRY_HEADER_BYTES + FIXED_PAYLOAD_BYTES) {
+            return null;
+        }
+        int length = buffer.getInt(start);
+        int checksum = buffer.getInt(start + Integer.BYTES);
+        if (length < FIXED_PAYLOAD_BYTES || length > buffer.remaining() - ENTRY_HEADER_BYTES) {
+            return null;
+        }
+        int payloadStart = start + ENTRY_HEADER_BYTES;
+        crc.reset();
+        crc.update(buffer.duplicate().position(payloadStart).limit(payloadStart + length));
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        buffer.position(payloadStart);
+        long sequence = buffer.getLong();
+        long timestamp = buffer.getLong();
+        AuditEvent.Type type = AuditEvent.Type.values()[buffer.get()];
+        long userId = buffer.getLong();
+        String username = readText(buffer);
+        String detail = readText(buffer);
+        return new AuditEvent(sequence, timestamp, type, userId, username, detail);
+    }
+
+    private static String readText(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long baseSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
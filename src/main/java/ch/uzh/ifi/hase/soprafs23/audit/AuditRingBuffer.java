@@ -0,0 +1,79 @@
+package ch.uzh.ifi.hase.soprafs23.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers (the request threads) and a single consumer
+ * (the audit writer). A producer claims a slot by a compare-and-set on the tail sequence and
+ * publishes its event into it; the consumer takes the events in claim order and frees the
+ * slot. A claimed slot whose event is not published yet stops the consumer until it is, so
+ * the order of the log is the order of the claims.
+ */
+final class AuditRingBuffer {
+
+    private final AtomicReferenceArray<AuditEvent> slots;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    // only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+
+    AuditRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two, not " + capacity);
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    boolean offer(AuditEvent event) {
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed - head.get() >= slots.length()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(claimed, claimed + 1));
+        slots.set((int) claimed & mask, event);
+        return true;
+    }
+
+    /**
+     * Moves up to max events into the given list. Must only be called by the consumer thread.
+     *
+     * @return the number of events moved
+     */
+    int drainTo(List<AuditEvent> into, int max) {
+        long next = head.get();
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) next & mask;
+            AuditEvent event = slots.get(index);
+            if (event == null) {
+                break;
+            }
+            slots.lazySet(index, null);
+            into.add(event);
+            next++;
+            drained++;
+        }
+        // frees the slots for the producers at once
+        head.lazySet(next);
+        return drained;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+}
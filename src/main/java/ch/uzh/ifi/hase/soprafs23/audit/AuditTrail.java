@@ -0,0 +1,308 @@
+package ch.uzh.ifi.hase.soprafs23.audit;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Audit trail of registrations, logins, failed logins and profile changes. Recording an
+ * event only puts it into a lock-free {@link AuditRingBuffer}; a single writer thread takes
+ * the events out in batches of up to audit.batch-size, appends them to the memory-mapped
+ * {@link AuditLog} and forces the log to the disk every audit.fsync-interval-millis. So the
+ * request threads never wait for the disk, and the latest events may be lost in a crash.
+ * Events of a transaction are only recorded once it commits, failed logins right away.
+ * When the buffer is full, the request thread waits up to audit.offer-timeout-millis for the
+ * writer and then drops the event; both show on the actuator as audit.producer.waits and
+ * audit.events.dropped, next to the buffer fill level audit.buffer.pending. Failures of the
+ * writer are logged and counted in audit.writer.failures, and the writer carries on.
+ */
+@Component
+public class AuditTrail implements MeterBinder {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Logger log = LoggerFactory.getLogger(AuditTrail.class);
+
+    private final boolean enabled;
+
+    private final AuditRingBuffer buffer;
+
+    private final AuditLog auditLog;
+
+    // set if no directory is configured, the trail is deleted with the process
+    private final Path temporaryDirectory;
+
+    private final int batchSize;
+
+    private final long fsyncIntervalNanos;
+
+    private final long offerTimeoutNanos;
+
+    private final Thread writer = new Thread(this::writeLoop, "audit-writer");
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong fsyncs = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong producerWaits = new AtomicLong();
+
+    private final AtomicLong writerFailures = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    public AuditTrail(@Value("${audit.enabled:true}") boolean enabled,
+                      @Value("${audit.directory:}") String directory,
+                      @Value("${audit.segment-bytes:16777216}") int segmentBytes,
+                      @Value("${audit.max-segments:8}") int maxSegments,
+                      @Value("${audit.buffer-capacity:8192}") int bufferCapacity,
+                      @Value("${audit.batch-size:256}") int batchSize,
+                      @Value("${audit.fsync-interval-millis:1000}") long fsyncIntervalMillis,
+                      @Value("${audit.offer-timeout-millis:10}") long offerTimeoutMillis) throws IOException {
+        this.enabled = enabled;
+        this.buffer = new AuditRingBuffer(bufferCapacity);
+        this.batchSize = batchSize;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+        if (enabled) {
+            // without a configured directory the trail only lives as long as this process
+            this.temporaryDirectory = directory.isEmpty() ? Files.createTempDirectory("soprafs23-audit-") : null;
+            Path path = directory.isEmpty() ? temporaryDirectory : Path.of(directory);
+            this.auditLog = new AuditLog(path, segmentBytes, maxSegments);
+            log.info("Writing the audit trail to {}, continuing at sequence {}", path, auditLog.getNextSequence());
+        }
+        else {
+            this.auditLog = null;
+            this.temporaryDirectory = null;
+        }
+        writer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            writer.start();
+        }
+    }
+
+    /**
+     * Writes the events still in the buffer and closes the log.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        if (temporaryDirectory != null) {
+            try (Stream<Path> files = Files.list(temporaryDirectory)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(temporaryDirectory);
+        }
+    }
+
+    public void registered(User user) {
+        record(AuditEvent.of(AuditEvent.Type.REGISTERED, user.getId(), user.getUsername(), ""));
+    }
+
+    public void loggedIn(User user) {
+        record(AuditEvent.of(AuditEvent.Type.LOGGED_IN, user.getId(), user.getUsername(), ""));
+    }
+
+    /**
+     * @param userId the id of the user if the username exists, otherwise null
+     */
+    public void loginFailed(String username, Long userId, String reason) {
+        record(AuditEvent.of(AuditEvent.Type.LOGIN_FAILED, userId, username, reason));
+    }
+
+    /**
+     * @param changes the changed fields, e.g. "status ONLINE -> OFFLINE"
+     */
+    public void profileChanged(User user, String changes) {
+        record(AuditEvent.of(AuditEvent.Type.PROFILE_CHANGED, user.getId(), user.getUsername(), changes));
+    }
+
+    /**
+     * Reads the written events in order, starting at the given sequence number. Events
+     * still waiting in the buffer are not included yet.
+     */
+    public List<AuditEvent> read(long fromSequence, int limit) {
+        if (!enabled) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The audit trail is disabled!");
+        }
+        try {
+            return auditLog.read(fromSequence, limit);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void record(AuditEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (event.getType() != AuditEvent.Type.LOGIN_FAILED && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(event);
+                }
+            });
+        }
+        else {
+            enqueue(event);
+        }
+    }
+
+    private void enqueue(AuditEvent event) {
+        if (buffer.offer(event)) {
+            return;
+        }
+        // the writer is behind, give it a moment before the event is given up
+        producerWaits.incrementAndGet();
+        long deadline = System.nanoTime() + offerTimeoutNanos;
+        do {
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+            if (buffer.offer(event)) {
+                return;
+            }
+        } while (System.nanoTime() < deadline);
+        dropped.incrementAndGet();
+    }
+
+    private void writeLoop() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        long lastForce = System.nanoTime();
+        while (true) {
+            boolean stopping = !running;
+            try {
+                int drained = buffer.drainTo(batch, batchSize);
+                if (drained > 0) {
+                    append(batch);
+                    batch.clear();
+                }
+                else if (stopping) {
+                    break;
+                }
+                else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                if (System.nanoTime() - lastForce >= fsyncIntervalNanos) {
+                    // a failed force is tried again after the next interval, not on every round
+                    lastForce = System.nanoTime();
+                    if (auditLog.force()) {
+                        fsyncs.incrementAndGet();
+                    }
+                }
+            }
+            catch (RuntimeException e) {
+                // the thread must not die, nothing would be written anymore
+                writerFailures.incrementAndGet();
+                log.error("The audit writer failed, continuing", e);
+                dropped.addAndGet(batch.size());
+                batch.clear();
+                if (stopping) {
+                    break;
+                }
+            }
+        }
+        try {
+            auditLog.close();
+        }
+        catch (IOException e) {
+            log.error("Could not close the audit log", e);
+        }
+    }
+
+    private void append(List<AuditEvent> batch) {
+        int appended = 0;
+        try {
+            for (AuditEvent event : batch) {
+                auditLog.append(event);
+                appended++;
+            }
+            batches.incrementAndGet();
+        }
+        catch (IOException | RuntimeException e) {
+            int lost = batch.size() - appended;
+            dropped.addAndGet(lost);
+            writerFailures.incrementAndGet();
+            log.error("Could not write {} audit events", lost, e);
+        }
+        finally {
+            written.addAndGet(appended);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("audit.buffer.pending", buffer, AuditRingBuffer::size)
+                .description("Audit events waiting for the writer")
+                .register(registry);
+        Gauge.builder("audit.buffer.capacity", buffer, AuditRingBuffer::capacity)
+                .description("Audit events the buffer holds before request threads have to wait")
+                .register(registry);
+        FunctionCounter.builder("audit.events.written", written, AtomicLong::get)
+                .description("Audit events appended to the log")
+                .register(registry);
+        FunctionCounter.builder("audit.batches.written", batches, AtomicLong::get)
+                .description("Batches the audit events were appended in")
+                .register(registry);
+        FunctionCounter.builder("audit.fsyncs", fsyncs, AtomicLong::get)
+                .description("Forces of the audit log to the disk")
+                .register(registry);
+        FunctionCounter.builder("audit.producer.waits", producerWaits, AtomicLong::get)
+                .description("Events whose request thread had to wait because the buffer was full")
+                .register(registry);
+        FunctionCounter.builder("audit.events.dropped", dropped, AtomicLong::get)
+                .description("Events lost because the buffer stayed full or the log could not be written")
+                .register(registry);
+        FunctionCounter.builder("audit.writer.failures", writerFailures, AtomicLong::get)
+                .description("Failed appends and forces of the audit log, after each of which the writer carried on")
+                .register(registry);
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
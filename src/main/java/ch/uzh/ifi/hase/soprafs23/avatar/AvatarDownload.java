@@ -0,0 +1,123 @@
+package ch.uzh.ifi.hase.soprafs23.avatar;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes a stored avatar to the response without copying it through the heap. On Tomcat the
+ * file is handed to the connector, which sends it with sendfile (FileChannel.transferTo to
+ * the socket); elsewhere, e.g. in MockMvc, it is transferred to the response stream in one
+ * transferTo call. Answers If-None-Match with 304 and a single byte range (Range, If-Range)
+ * with 206, other range requests get the whole file.
+ */
+public final class AvatarDownload {
+
+    // request attributes of Tomcat's sendfile support, see org.apache.coyote.Constants
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final Pattern SINGLE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    private AvatarDownload() {
+    }
+
+    /**
+     * @param etag         the quoted entity tag, stable for as long as the file exists
+     * @param cacheControl the Cache-Control header of the response
+     */
+    public static void send(Path file, String etag, String cacheControl, HttpServletRequest request,
+                            HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file)) {
+            long length = channel.size();
+            long start = 0;
+            long end = length;
+            String range = request.getHeader(HttpHeaders.RANGE);
+            String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+            Matcher matcher = range == null ? null : SINGLE_RANGE.matcher(range.trim());
+            if (matcher != null && matcher.matches() && (ifRange == null || ifRange.equals(etag))
+                    && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+                if (matcher.group(1).isEmpty()) {
+                    // the last n bytes
+                    start = Math.max(0, length - parse(matcher.group(2)));
+                }
+                else {
+                    start = parse(matcher.group(1));
+                    end = matcher.group(2).isEmpty() ? length : Math.min(length, parse(matcher.group(2)) + 1);
+                }
+                if (start >= end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+            else {
+                response.setStatus(HttpStatus.OK.value());
+            }
+            MediaType mediaType = AvatarStore.mediaType(channel);
+            response.setContentType(mediaType.toString());
+            response.setContentLengthLong(end - start);
+            if ("HEAD".equals(request.getMethod())) {
+                return;
+            }
+
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+                // Tomcat sends the file once the servlet returns, this channel is not needed for it
+                request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end);
+                return;
+            }
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, out);
+            }
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // a range beyond Long.MAX_VALUE is as unsatisfiable as any other range past the end
+    private static long parse(String number) {
+        try {
+            return Long.parseLong(number);
+        }
+        catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
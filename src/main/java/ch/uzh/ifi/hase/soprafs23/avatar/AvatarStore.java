@@ -0,0 +1,270 @@
+package ch.uzh.ifi.hase.soprafs23.avatar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Avatar images on the local disk, addressed by the SHA-256 of their content: an avatar is
+ * stored once however many users upload it, a stored file never changes, and the hash is all
+ * a User keeps of it. Thumbnails of the configured avatars.thumbnail-sizes are rendered as PNG
+ * when the avatar is uploaded and kept next to it, so a download never scales an image.
+ * Files are written to a temporary name first and moved into place, so readers never see a
+ * partly written file. Files no user refers to any more are not removed.
+ */
+@Component
+public class AvatarStore {
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private static final Pattern FORMATS = Pattern.compile("png|jpeg|gif");
+
+    // decoding is refused above this, a small upload can otherwise expand to gigabytes of pixels
+    private static final int MAX_DIMENSION = 4096;
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Logger log = LoggerFactory.getLogger(AvatarStore.class);
+
+    private final Path directory;
+
+    private final Path uploads;
+
+    // set if no directory is configured, the avatars are deleted with the process
+    private final Path temporaryDirectory;
+
+    private final long maxBytes;
+
+    private final int[] thumbnailSizes;
+
+    public AvatarStore(@Value("${avatars.directory:}") String directory,
+                       @Value("${avatars.max-bytes:2097152}") long maxBytes,
+                       @Value("${avatars.thumbnail-sizes:64,256}") int[] thumbnailSizes) throws IOException {
+        this.temporaryDirectory = directory.isEmpty() ? Files.createTempDirectory("soprafs23-avatars-") : null;
+        this.directory = directory.isEmpty() ? temporaryDirectory : Path.of(directory);
+        this.uploads = Files.createDirectories(this.directory.resolve("uploads"));
+        this.maxBytes = maxBytes;
+        this.thumbnailSizes = thumbnailSizes.clone();
+        log.info("Storing avatars in {}", this.directory);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (temporaryDirectory != null) {
+            try (Stream<Path> files = Files.walk(temporaryDirectory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores a PNG, JPEG or GIF image and renders its thumbnails, unless the same image is
+     * stored already.
+     *
+     * @return the SHA-256 of the image, in lower case hex
+     * @throws ResponseStatusException 413 if the image is larger than avatars.max-bytes,
+     *                                 415 if it is not a PNG, JPEG or GIF image
+     */
+    public String store(InputStream image) throws IOException {
+        Path upload = Files.createTempFile(uploads, "avatar-", ".upload");
+        try {
+            String hash = copyAndHash(image, upload);
+            Path original = path(hash);
+            if (Files.exists(original)) {
+                return hash;
+            }
+            BufferedImage decoded = decode(upload);
+            Files.createDirectories(original.getParent());
+            for (int size : thumbnailSizes) {
+                writeThumbnail(decoded, size, thumbnailPath(hash, size));
+            }
+            // the original is moved in last, once it is there its thumbnails are as well
+            moveIntoPlace(upload, original);
+            return hash;
+        }
+        finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    /**
+     * @param size the edge length of a thumbnail, null for the image as uploaded
+     * @return the file of the avatar, thumbnails that are missing (e.g. after a new size was
+     * configured) are rendered first
+     * @throws ResponseStatusException 404 if there is no such avatar, 400 if no thumbnails of this size are kept
+     */
+    public Path open(String hash, Integer size) {
+        if (!HASH.matcher(hash).matches()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format("There is no avatar %s!", hash));
+        }
+        Path original = path(hash);
+        if (!Files.exists(original)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format("There is no avatar %s!", hash));
+        }
+        if (size == null) {
+            return original;
+        }
+        if (Arrays.stream(thumbnailSizes).noneMatch(thumbnailSize -> thumbnailSize == size)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format(
+                    "Avatars are available in the sizes %s only!", Arrays.toString(thumbnailSizes)));
+        }
+        Path thumbnail = thumbnailPath(hash, size);
+        if (!Files.exists(thumbnail)) {
+            try {
+                writeThumbnail(decode(original), size, thumbnail);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * @return the type of a stored avatar from its first bytes, thumbnails are always PNG
+     */
+    public static MediaType mediaType(FileChannel file) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        file.read(magic, 0);
+        byte[] bytes = magic.array();
+        if (bytes[0] == (byte) 0xFF && bytes[1] == (byte) 0xD8) {
+            return MediaType.IMAGE_JPEG;
+        }
+        if (bytes[0] == 'G' && bytes[1] == 'I' && bytes[2] == 'F') {
+            return MediaType.IMAGE_GIF;
+        }
+        return MediaType.IMAGE_PNG;
+    }
+
+    private String copyAndHash(InputStream image, Path upload) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("every Java platform supports SHA-256", e);
+        }
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        try (OutputStream out = Files.newOutputStream(upload)) {
+            int read;
+            while ((read = image.read(buffer)) != -1) {
+                total += read;
+                if (total > maxBytes) {
+                    throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                            String.format("An avatar can have at most %d bytes!", maxBytes));
+                }
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        }
+        return HEX.formatHex(digest.digest());
+    }
+
+    private static BufferedImage decode(Path file) throws IOException {
+        String message = "The avatar must be a PNG, JPEG or GIF image of at most %dx%d pixels!";
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                        String.format(message, MAX_DIMENSION, MAX_DIMENSION));
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                // the size is in the header, so oversized images are refused before decoding them
+                if (!FORMATS.matcher(reader.getFormatName().toLowerCase()).matches()
+                        || reader.getWidth(0) > MAX_DIMENSION || reader.getHeight(0) > MAX_DIMENSION) {
+                    throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                            String.format(message, MAX_DIMENSION, MAX_DIMENSION));
+                }
+                return reader.read(0);
+            }
+            catch (IOException e) {
+                throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                        String.format(message, MAX_DIMENSION, MAX_DIMENSION));
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales the image to fit into a size x size square, keeping its aspect ratio.
+     */
+    private void writeThumbnail(BufferedImage image, int size, Path thumbnail) throws IOException {
+        double scale = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        }
+        finally {
+            graphics.dispose();
+        }
+        Path rendering = Files.createTempFile(uploads, "thumbnail-", ".png");
+        try {
+            ImageIO.write(scaled, "png", rendering.toFile());
+            moveIntoPlace(rendering, thumbnail);
+        }
+        finally {
+            Files.deleteIfExists(rendering);
+        }
+    }
+
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // spread over 256 directories, so no directory grows too large to list
+    private Path path(String hash) {
+        return directory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Path thumbnailPath(String hash, int size) {
+        return directory.resolve(hash.substring(0, 2)).resolve(hash + "-" + size + ".png");
+    }
+}
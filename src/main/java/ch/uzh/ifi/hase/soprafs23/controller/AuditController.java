@@ -0,0 +1,46 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.audit.AuditEvent;
+import ch.uzh.ifi.hase.soprafs23.audit.AuditTrail;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.AuditEventGetDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.mapper.DTOMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Audit Controller
+ * This class replays the audit trail of registrations, logins and profile changes. A client
+ * follows the trail by asking again from the sequence number after the last entry it got.
+ */
+@RestController
+@RequestMapping("/admin/audit")
+public class AuditController {
+
+    static final int MAX_LIMIT = 1000;
+
+    private final AuditTrail auditTrail;
+
+    AuditController(AuditTrail auditTrail) {
+        this.auditTrail = auditTrail;
+    }
+
+    @GetMapping
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<AuditEventGetDTO> getAuditEvents(@RequestParam(defaultValue = "0") long from,
+                                                 @RequestParam(defaultValue = "100") int limit) {
+        if (from < 0 || limit < 1 || limit > MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("from must not be negative and limit must be between 1 and %d!", MAX_LIMIT));
+        }
+        List<AuditEventGetDTO> auditEventGetDTOs = new ArrayList<>();
+        for (AuditEvent auditEvent : auditTrail.read(from, limit)) {
+            auditEventGetDTOs.add(DTOMapper.INSTANCE.convertAuditEventToAuditEventGetDTO(auditEvent));
+        }
+        return auditEventGetDTOs;
+    }
+}
@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.avatar.AvatarDownload;
+import ch.uzh.ifi.hase.soprafs23.avatar.AvatarStore;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Avatar upload and download. The image is stored by AvatarStore, the user only keeps its
+ * hash, which is also the ETag. GET /users/{id}/avatar is revalidated by the clients, as the
+ * user may upload another avatar; GET /avatars/{hash} never changes and is cached for a year.
+ * Both take size=... for one of the thumbnails.
+ */
+@RestController
+public class AvatarController {
+
+    private static final String REVALIDATE = "no-cache";
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    private final UserService userService;
+
+    private final AvatarStore avatarStore;
+
+    AvatarController(UserService userService, AvatarStore avatarStore) {
+        this.userService = userService;
+        this.avatarStore = avatarStore;
+    }
+
+    @PutMapping(value = "/users/{id}/avatar",
+            consumes = {MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_GIF_VALUE})
+    public ResponseEntity<Void> uploadAvatar(@PathVariable long id, HttpServletRequest request) throws IOException {
+        // fails with 404 before anything is stored for an unknown user
+        userService.getUserProfile(id);
+        String hash = avatarStore.store(request.getInputStream());
+        userService.updateAvatar(id, hash);
+        return ResponseEntity.noContent().eTag(hash).build();
+    }
+
+    @GetMapping("/users/{id}/avatar")
+    public void downloadAvatar(@PathVariable long id, @RequestParam(required = false) Integer size,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        User user = userService.getUserProfile(id);
+        if (user.getAvatarHash() == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    String.format("User with id %d has no avatar!", id));
+        }
+        send(user.getAvatarHash(), size, REVALIDATE, request, response);
+    }
+
+    @GetMapping("/avatars/{hash}")
+    public void downloadAvatar(@PathVariable String hash, @RequestParam(required = false) Integer size,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        send(hash, size, IMMUTABLE, request, response);
+    }
+
+    private void send(String hash, Integer size, String cacheControl, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        Path file = avatarStore.open(hash, size);
+        String etag = "\"" + hash + (size == null ? "" : "-" + size) + "\"";
+        AvatarDownload.send(file, etag, cacheControl, request, response);
+    }
+}
@@ -0,0 +1,55 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.tracing.FlightRecordingService;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Flight Recording Controller
+ * This class starts and stops Java Flight Recorder recordings of the running server.
+ * The stopped recording is downloaded as a .jfr file, to be opened with JDK Mission
+ * Control or `jfr print`.
+ */
+@RestController
+@RequestMapping("/admin/jfr")
+public class FlightRecordingController {
+
+    private final FlightRecordingService flightRecordingService;
+
+    FlightRecordingController(FlightRecordingService flightRecordingService) {
+        this.flightRecordingService = flightRecordingService;
+    }
+
+    @PostMapping("/start")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void startRecording(@RequestParam(defaultValue = "profile") String settings,
+                               @RequestParam(required = false) Long maxAgeSeconds) {
+        flightRecordingService.start(settings, maxAgeSeconds == null ? null : Duration.ofSeconds(maxAgeSeconds));
+    }
+
+    @PostMapping("/stop")
+    public ResponseEntity<StreamingResponseBody> stopRecording() {
+        Path file = flightRecordingService.stop();
+        StreamingResponseBody body = out -> {
+            try {
+                Files.copy(file, out);
+            }
+            finally {
+                Files.deleteIfExists(file);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(file.getFileName().toString()).build().toString())
+                .body(body);
+    }
+}
@@ -0,0 +1,62 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserImportResultDTO;
+import ch.uzh.ifi.hase.soprafs23.service.UserTransferService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * User Admin Controller
+ * This class is responsible for the bulk export and import of users. Both endpoints
+ * stream, so the size of the USER table does not matter for the memory of the server.
+ * Like everything under /admin they require the admin token, see AdminTokenFilter.
+ */
+@RestController
+@RequestMapping("/admin/users")
+public class UserAdminController {
+
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    static final MediaType CSV = MediaType.parseMediaType("text/csv");
+
+    private final UserTransferService userTransferService;
+
+    UserAdminController(UserTransferService userTransferService) {
+        this.userTransferService = userTransferService;
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(defaultValue = "ndjson") String format) {
+        UserTransferService.Format transferFormat = parseFormat(format);
+        // the body is written on an async thread once the headers are sent
+        StreamingResponseBody body = out -> userTransferService.exportUsers(transferFormat, out);
+        return ResponseEntity.ok()
+                .contentType(transferFormat == UserTransferService.Format.CSV ? CSV : NDJSON)
+                .body(body);
+    }
+
+    @PostMapping("/import")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public UserImportResultDTO importUsers(@RequestParam(defaultValue = "ndjson") String format,
+                                           @RequestParam(defaultValue = "false") boolean overwriteCredentials,
+                                           InputStream body) {
+        return userTransferService.importUsers(parseFormat(format), body, overwriteCredentials);
+    }
+
+    private static UserTransferService.Format parseFormat(String format) {
+        try {
+            return UserTransferService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Unknown format %s, use ndjson or csv", format));
+        }
+    }
+}
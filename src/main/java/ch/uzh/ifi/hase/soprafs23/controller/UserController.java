@@ -1,17 +1,32 @@
 package ch.uzh.ifi.hase.soprafs23.controller;
 
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserBulkGetDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTOList;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPatchDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserStatsGetDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserSummaryList;
 import ch.uzh.ifi.hase.soprafs23.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs23.service.UserDirectory;
+import ch.uzh.ifi.hase.soprafs23.service.UserPage;
 import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import ch.uzh.ifi.hase.soprafs23.service.UserStatistics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * User Controller
@@ -23,25 +38,69 @@ import java.util.List;
 @RestController
 public class UserController {
 
+    private static final int MAX_STATS_DAYS = 366;
+
     private final UserService userService;
 
-    UserController(UserService userService) {
+    private final UserStatistics userStatistics;
+
+    private final UserDirectory userDirectory;
+
+    private final int maxBulkIds;
+
+    private final int defaultPageSize;
+
+    private final int maxPageSize;
+
+    UserController(UserService userService, UserStatistics userStatistics, UserDirectory userDirectory,
+                   @Value("${users.bulk-lookup.max-ids:100}") int maxBulkIds,
+                   @Value("${users.list.page-size:50}") int defaultPageSize,
+                   @Value("${users.list.max-page-size:500}") int maxPageSize) {
     this.userService = userService;
+    this.userStatistics = userStatistics;
+    this.userDirectory = userDirectory;
+    this.maxBulkIds = maxBulkIds;
+    this.defaultPageSize = defaultPageSize;
+    this.maxPageSize = maxPageSize;
     }
 
     @GetMapping("/users")
+    public ResponseEntity<UserGetDTOList> getAllUsers(@RequestParam(required = false) String status,
+                                                      @RequestParam(required = false) String sort,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) Integer limit) {
+    if (status == null && sort == null && cursor == null && limit == null) {
+        // fetch all users in the internal representation, they are written in the API
+        // representation by UserGetDTOListSerializer without building a UserGetDTO per user
+        // the status is the one of the SessionStore where it knows the user, like for a single profile
+        List<User> users = userService.getUsers();
+        return ResponseEntity.ok(new UserGetDTOList(users, userService.getSharedStatuses(users)));
+    }
+
+    int pageSize = limit == null ? defaultPageSize : limit;
+    if (pageSize < 1 || pageSize > maxPageSize) {
+        String message = "The limit must be between 1 and %d!";
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format(message, maxPageSize));
+    }
+    UserPage page = userService.getUserPage(status, sort, cursor, pageSize);
+    // the cursor of the next page travels in a header, so the body stays the plain user array
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (page.getNextCursor() != null) {
+        response.header("X-Next-Cursor", page.getNextCursor());
+    }
+    return response.body(new UserGetDTOList(page.getUsers(), userService.getSharedStatuses(page.getUsers())));
+    }
+
+    /**
+     * Id, username, status and creation date of all users, or of the users with a status
+     * (GET /users?view=summary&status=ONLINE for who is online), served from the in-memory
+     * UserDirectory instead of the USER table.
+     */
+    @GetMapping(value = "/users", params = "view=summary")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public List<UserGetDTO> getAllUsers() {
-    // fetch all users in the internal representation
-    List<User> users = userService.getUsers();
-    List<UserGetDTO> userGetDTOs = new ArrayList<>();
-
-    // convert each user to the API representation
-    for (User user : users) {
-      userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
-    }
-    return userGetDTOs;
+    public UserSummaryList getUserSummaries(@RequestParam(required = false) String status) {
+        return userDirectory.getSummaries(status);
     }
 
     @PostMapping("/users")
@@ -67,12 +126,71 @@ public class UserController {
         return DTOMapper.INSTANCE.convertEntityToUserGetDTO(loggedInUser);
     }
 
+    /**
+     * Aggregates for the game UI, served from the in-memory read models in UserStatistics
+     * and UserDirectory instead of being computed from the USER table per request.
+     */
+    @GetMapping("/users/stats")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public UserStatsGetDTO retrieveUserStatistics(@RequestParam(defaultValue = "30") int days) {
+        if (days < 1 || days > MAX_STATS_DAYS) {
+            String message = "The number of days must be between 1 and %d!";
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format(message, MAX_STATS_DAYS));
+        }
+        return userStatistics.getStatistics(days);
+    }
+
     @GetMapping("/users/{id}")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
     public UserGetDTO retrieveUserProfile(@PathVariable long id) {
         User userById = userService.getUserProfile(id);
-        return DTOMapper.INSTANCE.convertEntityToUserGetDTO(userById);
+        UserGetDTO userGetDTO = DTOMapper.INSTANCE.convertEntityToUserGetDTO(userById);
+        // logins and status changes on other instances are only known to the SessionStore
+        UserStatus sharedStatus = userService.getSharedStatus(id);
+        if (sharedStatus != null) {
+            userGetDTO.setStatus(sharedStatus);
+        }
+        return userGetDTO;
+    }
+
+    /**
+     * Multi-get for lobbies and scoreboards: GET /users?ids=1,2,3 resolves all ids in one
+     * query. Users are returned in the order they were requested, unknown ids are listed
+     * in missingIds instead of failing the whole call.
+     */
+    @GetMapping(value = "/users", params = "ids")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public UserBulkGetDTO retrieveUserProfiles(@RequestParam List<Long> ids) {
+        Set<Long> requestedIds = new LinkedHashSet<>(ids);
+        if (requestedIds.size() > maxBulkIds) {
+            String message = "At most %d ids can be requested at once!";
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format(message, maxBulkIds));
+        }
+
+        Map<Long, User> usersById = userService.getUserProfiles(requestedIds);
+        List<User> users = new ArrayList<>(usersById.size());
+        UserBulkGetDTO userBulkGetDTO = new UserBulkGetDTO();
+        for (Long id : requestedIds) {
+            User user = usersById.get(id);
+            if (user == null) {
+                userBulkGetDTO.getMissingIds().add(id);
+            }
+            else {
+                users.add(user);
+            }
+        }
+        UserStatus[] sharedStatuses = userService.getSharedStatuses(users);
+        for (int i = 0; i < users.size(); i++) {
+            UserGetDTO userGetDTO = DTOMapper.INSTANCE.convertEntityToUserGetDTO(users.get(i));
+            if (sharedStatuses != null && sharedStatuses[i] != null) {
+                userGetDTO.setStatus(sharedStatuses[i]);
+            }
+            userBulkGetDTO.getUsers().add(userGetDTO);
+        }
+        return userBulkGetDTO;
     }
 
     @PutMapping("/users/{id}")
@@ -82,5 +200,17 @@ public class UserController {
 
       return ResponseEntity.noContent().build();
     }
-    
+
+    /**
+     * JSON Merge Patch (RFC 7396) of a profile: members that are present are set, a null
+     * birthday removes it, absent members are left as they are.
+     */
+    @PatchMapping(value = "/users/{id}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public ResponseEntity<Void> patchUser(@PathVariable long id, @RequestBody UserPatchDTO userPatchDTO) {
+    userService.patchUserProfile(userPatchDTO, id);
+
+    return ResponseEntity.noContent().build();
+    }
+
 }
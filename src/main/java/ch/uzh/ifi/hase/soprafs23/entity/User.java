@@ -1,6 +1,14 @@
 package ch.uzh.ifi.hase.soprafs23.entity;
 
 import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import java.io.Serial;
@@ -16,22 +24,42 @@ import java.util.Date;
  * - nullable = false -> this cannot be left empty
  * - unique = true -> this value must be unique across the database -> composes
  * the primary key
+ * Users are kept in the Hibernate second-level cache, lookups by id and by the
+ * username (natural id) are served from there until the row changes.
  */
 @Entity // this class is a JPA entity and is mapped with a database table.
-@Table(name = "USER")
+// the lookups by username (login) and token and the sorted listings (see UserRepository.findPage)
+// need these indexes, see UserRepositoryQueryPlanTest. H2 does not read an index backwards, so
+// each listing index exists in both directions, one for newest first and one for oldest first.
+@Table(name = "USER", indexes = {
+        @Index(name = "USER_USERNAME_IDX", columnList = "username", unique = true),
+        @Index(name = "USER_TOKEN_IDX", columnList = "token", unique = true),
+        @Index(name = "USER_STATUS_CREATION_DATE_IDX", columnList = "status, creation_date DESC, id DESC"),
+        @Index(name = "USER_STATUS_CREATION_DATE_ASC_IDX", columnList = "status, creation_date, id"),
+        @Index(name = "USER_CREATION_DATE_IDX", columnList = "creation_date DESC, id DESC"),
+        @Index(name = "USER_CREATION_DATE_ASC_IDX", columnList = "creation_date, id")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "user")
+@NaturalIdCache(region = "user-natural-id")
+@DynamicUpdate // UPDATE statements only set the columns that changed
 public class User implements Serializable {
 
     @Serial
     private static final long serialVersionUID = 1L;
 
     @Id // @Id indicates that this is a primary key
-    @GeneratedValue
+    @GeneratedValue(generator = "user-id")
+    // hibernate_sequence as before, the id also tells the shard of the user (see ShardRouter)
+    @GenericGenerator(name = "user-id", strategy = "ch.uzh.ifi.hase.soprafs23.sharding.ShardedIdGenerator",
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "hibernate_sequence"))
     private Long id;
 
-    @Column(nullable = false, unique = true)
+    @NaturalId(mutable = true) // usernames can be changed in the profile
+    @Column(nullable = false)
     private String username;
 
-    @Column(nullable = false, unique = true)
+    @Column(nullable = false)
     private String token;
 
     @Column(nullable = false)
@@ -46,6 +74,10 @@ public class User implements Serializable {
     @Column(nullable = true)
     private Date birthday;
 
+    // SHA-256 of the avatar in the AvatarStore, the image itself is kept out of the table
+    @Column(nullable = true, length = 64)
+    private String avatarHash;
+
     public Long getId() {
     return id;
     }
@@ -102,4 +134,12 @@ public class User implements Serializable {
         this.birthday = birthday;
     }
 
+    public String getAvatarHash() {
+        return avatarHash;
+    }
+
+    public void setAvatarHash(String avatarHash) {
+        this.avatarHash = avatarHash;
+    }
+
 }
@@ -0,0 +1,44 @@
+package ch.uzh.ifi.hase.soprafs23.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Where to find a user that does not live on the home shard of its username, because it was
+ * renamed after it registered (see ShardRouter). The route is stored on the home shard of the
+ * username, so a lookup by username only ever asks that one shard. Without sharding the table
+ * stays empty.
+ */
+@Entity
+@Table(name = "USERNAME_ROUTE")
+public class UsernameRoute implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private String username;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    protected UsernameRoute() {
+    }
+
+    public UsernameRoute(String username, Long userId) {
+        this.username = username;
+        this.userId = userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+}
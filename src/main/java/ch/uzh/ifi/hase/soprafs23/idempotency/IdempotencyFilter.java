@@ -0,0 +1,195 @@
+package ch.uzh.ifi.hase.soprafs23.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Makes POST /users and PUT /users/{id} idempotent for clients that send an
+ * Idempotency-Key header, so that retries after a timeout do not register a user twice
+ * or apply an update again.
+ * The first request with a key is executed and its response (any status below 500) is
+ * kept for users.idempotency.ttl-seconds in a store bounded to users.idempotency.max-keys.
+ * Requests that are still running are tracked apart from that store, so a burst of
+ * finished requests cannot evict them and let a retry execute a second time.
+ * Later requests with the same key, method and path get that response replayed without
+ * reaching the controller, requests arriving while the first one is still running wait for
+ * it. Reusing a key for a different body is answered with 422, a key whose first request
+ * takes longer than users.idempotency.wait-millis with 409.
+ */
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter implements MeterBinder {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private static final Pattern USER_PATH = Pattern.compile("/users/-?\\d+");
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    // executions whose response is not stored yet, at most one per request thread
+    private final ConcurrentMap<String, Execution> running = new ConcurrentHashMap<>();
+
+    // executions with a stored response
+    private final Cache<String, Execution> completed;
+
+    private final long waitMillis;
+
+    private final AtomicLong replays = new AtomicLong();
+
+    public IdempotencyFilter(@Value("${users.idempotency.max-keys:10000}") long maxKeys,
+                             @Value("${users.idempotency.ttl-seconds:86400}") long ttlSeconds,
+                             @Value("${users.idempotency.wait-millis:10000}") long waitMillis) {
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        this.waitMillis = waitMillis;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (request.getHeader(HEADER) == null) {
+            return true;
+        }
+        String path = urlPathHelper.getPathWithinApplication(request);
+        boolean createUser = "POST".equals(request.getMethod()) && "/users".equals(path);
+        boolean updateUser = "PUT".equals(request.getMethod()) && USER_PATH.matcher(path).matches();
+        return !(createUser || updateUser);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = request.getHeader(HEADER);
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(),
+                    String.format("The %s header must have between 1 and %d characters!", HEADER, MAX_KEY_LENGTH));
+            return;
+        }
+        byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+        String fingerprint = DigestUtils.md5DigestAsHex(body);
+        String storeKey = request.getMethod() + ' ' + urlPathHelper.getPathWithinApplication(request) + ' ' + key;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+
+        while (true) {
+            Execution first = completed.getIfPresent(storeKey);
+            if (first == null) {
+                Execution execution = new Execution(fingerprint);
+                first = running.putIfAbsent(storeKey, execution);
+                if (first == null) {
+                    // the first execution may have been stored between the two lookups
+                    first = completed.getIfPresent(storeKey);
+                    if (first == null) {
+                        execute(storeKey, execution, new CachedBodyRequest(request, body), response, chain);
+                        return;
+                    }
+                    running.remove(storeKey, execution);
+                    execution.response.complete(null);
+                }
+            }
+            if (!first.fingerprint.equals(fingerprint)) {
+                response.sendError(HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                        String.format("The %s was already used for a different request!", HEADER));
+                return;
+            }
+            StoredResponse stored;
+            try {
+                stored = first.response.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            catch (TimeoutException e) {
+                response.sendError(HttpStatus.CONFLICT.value(),
+                        String.format("A request with this %s is still being processed!", HEADER));
+                return;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException(e);
+            }
+            catch (ExecutionException e) {
+                throw new ServletException(e.getCause());
+            }
+            // without a stored response (5xx or exception) the request is executed again
+            if (stored != null) {
+                replays.incrementAndGet();
+                response.setHeader(REPLAYED_HEADER, "true");
+                stored.replay(response);
+                return;
+            }
+        }
+    }
+
+    private void execute(String storeKey, Execution execution, HttpServletRequest request, HttpServletResponse response,
+                         FilterChain chain) throws ServletException, IOException {
+        RecordingResponseWrapper recording = new RecordingResponseWrapper(response);
+        StoredResponse stored = null;
+        try {
+            chain.doFilter(request, recording);
+            if (recording.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+                stored = StoredResponse.of(recording);
+            }
+        }
+        finally {
+            // stored before it stops running, so a request with the same key always finds one of them
+            execution.response.complete(stored);
+            if (stored != null) {
+                completed.put(storeKey, execution);
+            }
+            running.remove(storeKey, execution);
+            recording.copyBodyToResponse();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("users.idempotency.replays", replays, AtomicLong::get)
+                .description("Requests answered with the stored response of an earlier request with the same Idempotency-Key")
+                .register(registry);
+        Gauge.builder("users.idempotency.keys", this, filter -> filter.completed.estimatedSize() + filter.running.size())
+                .description("Idempotency keys in the store, including the ones whose request is still running")
+                .register(registry);
+    }
+
+    long getReplays() {
+        return replays.get();
+    }
+
+    private static final class Execution {
+
+        private final String fingerprint;
+
+        private final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+        private Execution(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ch.uzh.ifi.hase.soprafs23.idempotency;
+
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Keeps the body like its superclass and also remembers errors sent with sendError,
+ * whose body is rendered later by the container's error page.
+ */
+class RecordingResponseWrapper extends ContentCachingResponseWrapper {
+
+    private boolean error;
+
+    private String errorMessage;
+
+    RecordingResponseWrapper(HttpServletResponse response) {
+        super(response);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        error = true;
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        error = true;
+        errorMessage = msg;
+        super.sendError(sc, msg);
+    }
+
+    boolean isError() {
+        return error;
+    }
+
+    String getErrorMessage() {
+        return errorMessage;
+    }
+}
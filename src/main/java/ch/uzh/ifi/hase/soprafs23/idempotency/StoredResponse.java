@@ -0,0 +1,65 @@
+package ch.uzh.ifi.hase.soprafs23.idempotency;
+
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A completed response as kept by {@link IdempotencyFilter}.
+ */
+final class StoredResponse {
+
+    private final int status;
+
+    private final String contentType;
+
+    private final Map<String, List<String>> headers;
+
+    private final byte[] body;
+
+    private final boolean error;
+
+    private final String errorMessage;
+
+    private StoredResponse(int status, String contentType, Map<String, List<String>> headers, byte[] body,
+                           boolean error, String errorMessage) {
+        this.status = status;
+        this.contentType = contentType;
+        this.headers = headers;
+        this.body = body;
+        this.error = error;
+        this.errorMessage = errorMessage;
+    }
+
+    static StoredResponse of(RecordingResponseWrapper response) {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (String name : response.getHeaderNames()) {
+            // set from contentType and the body when replayed
+            if (!HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name) && !HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                headers.put(name, new ArrayList<>(response.getHeaders(name)));
+            }
+        }
+        return new StoredResponse(response.getStatus(), response.getContentType(), headers,
+                response.getContentAsByteArray(), response.isError(), response.getErrorMessage());
+    }
+
+    void replay(HttpServletResponse response) throws IOException {
+        headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        if (error) {
+            // the error body is rendered by the error page, as for the first request
+            response.sendError(status, errorMessage);
+            return;
+        }
+        response.setStatus(status);
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -2,10 +2,49 @@ package ch.uzh.ifi.hase.soprafs23.repository;
 
 import ch.uzh.ifi.hase.soprafs23.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 @Repository("userRepository")
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
+
+    // the result is kept in the query cache and invalidated by every write to the USER table
+    @Override
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    List<User> findAll();
+
+    /**
+     * The users on one shard (see ShardRouter). Cached like findAll; the shard is a parameter
+     * so that every shard has its own entry in the query cache.
+     */
+    @Query("select u from User u where mod(u.id, :shards) = :shard")
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    List<User> findAllOnShard(@Param("shards") int shards, @Param("shard") int shard);
+
+    List<User> findByUsernameIn(Collection<String> usernames);
 
-    User findByUsername(String username);
+    /**
+     * Forward-only cursor over all users for exports. The caller must consume it inside a
+     * transaction and close it, the users are neither put into the second-level cache nor
+     * dirty checked.
+     */
+    @Query("select u from User u order by u.id")
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_CACHE_MODE, value = "IGNORE"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    Stream<User> streamAll();
 }
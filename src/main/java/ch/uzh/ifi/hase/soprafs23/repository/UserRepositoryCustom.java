@@ -0,0 +1,41 @@
+package ch.uzh.ifi.hase.soprafs23.repository;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Lookups that go through the Hibernate second-level cache instead of a query, and
+ * queries built at runtime, implemented in UserRepositoryImpl.
+ */
+public interface UserRepositoryCustom {
+
+    /**
+     * Natural id lookup, served from the natural id cache when possible.
+     *
+     * @return the user, or null if no user has this username
+     */
+    User findByUsername(String username);
+
+    /**
+     * Like findAllById, but ids that are already in the second-level cache are taken
+     * from there and only the remaining ids are loaded with a single IN query.
+     */
+    List<User> findAllByIdCacheFirst(Collection<Long> ids);
+
+    /**
+     * One page of users ordered by creation date, and by id among users created at the same
+     * time. Instead of an offset, the page continues after the last user of the previous page
+     * (keyset pagination), so every page is a range read of the (status, creation_date, id)
+     * or (creation_date, id) index, however deep it is. Descending pages come in index order,
+     * ascending ones are sorted after the index read.
+     *
+     * @param status            only users with this status, all users if null
+     * @param afterCreationDate creation date of the last user of the previous page, null for the first page
+     * @param afterId           id of the last user of the previous page, null for the first page
+     */
+    List<User> findPage(UserStatus status, boolean descending, Date afterCreationDate, Long afterId, int limit);
+}
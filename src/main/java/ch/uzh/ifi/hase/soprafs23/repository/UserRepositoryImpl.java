@@ -0,0 +1,87 @@
+package ch.uzh.ifi.hase.soprafs23.repository;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@Transactional(readOnly = true)
+class UserRepositoryImpl implements UserRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public User findByUsername(String username) {
+        return entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(User.class)
+                .load(username);
+    }
+
+    @Override
+    public List<User> findAllByIdCacheFirst(Collection<Long> ids) {
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        List<User> users = new ArrayList<>(ids.size());
+        List<Long> uncachedIds = new ArrayList<>();
+        for (Long id : ids) {
+            if (cache.contains(User.class, id)) {
+                User user = entityManager.find(User.class, id);
+                if (user != null) {
+                    users.add(user);
+                }
+            }
+            else {
+                uncachedIds.add(id);
+            }
+        }
+
+        if (!uncachedIds.isEmpty()) {
+            users.addAll(entityManager
+                    .createQuery("select u from User u where u.id in :ids", User.class)
+                    .setParameter("ids", uncachedIds)
+                    .getResultList());
+        }
+        return users;
+    }
+
+    @Override
+    public List<User> findPage(UserStatus status, boolean descending, Date afterCreationDate, Long afterId, int limit) {
+        String direction = descending ? "desc" : "asc";
+        String beyond = descending ? "<" : ">";
+        List<String> conditions = new ArrayList<>();
+        if (status != null) {
+            conditions.add("u.status = :status");
+        }
+        if (afterCreationDate != null) {
+            // the first condition bounds the index range, the second skips the users of the
+            // same creation date that were on the previous page
+            conditions.add("u.creation_date " + beyond + "= :afterCreationDate");
+            conditions.add("(u.creation_date " + beyond + " :afterCreationDate or u.id " + beyond + " :afterId)");
+        }
+        // the status is the same on every row, but H2 only reads the rows in index order
+        // instead of sorting them if the order by starts with the leading index column
+        String jpql = "select u from User u"
+                + (conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions))
+                + " order by " + (status != null ? "u.status, " : "")
+                + "u.creation_date " + direction + ", u.id " + direction;
+
+        TypedQuery<User> query = entityManager.createQuery(jpql, User.class).setMaxResults(limit);
+        if (status != null) {
+            query.setParameter("status", status);
+        }
+        if (afterCreationDate != null) {
+            query.setParameter("afterCreationDate", afterCreationDate);
+            query.setParameter("afterId", afterId);
+        }
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,9 @@
+package ch.uzh.ifi.hase.soprafs23.repository;
+
+import ch.uzh.ifi.hase.soprafs23.entity.UsernameRoute;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository("usernameRouteRepository")
+public interface UsernameRouteRepository extends JpaRepository<UsernameRoute, String> {
+}
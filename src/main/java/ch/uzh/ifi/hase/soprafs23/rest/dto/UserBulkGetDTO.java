@@ -0,0 +1,28 @@
+package ch.uzh.ifi.hase.soprafs23.rest.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserBulkGetDTO {
+
+    private List<UserGetDTO> users = new ArrayList<>();
+
+    private List<Long> missingIds = new ArrayList<>();
+
+    public List<UserGetDTO> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserGetDTO> users) {
+        this.users = users;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+
+    public void setMissingIds(List<Long> missingIds) {
+        this.missingIds = missingIds;
+    }
+
+}
@@ -20,6 +20,8 @@ public class UserGetDTO {
 
     private String token;
 
+    private String avatarHash;
+
     public Long getId() {
     return id;
     }
@@ -76,4 +78,12 @@ public class UserGetDTO {
         this.token = token;
     }
 
+    public String getAvatarHash() {
+        return avatarHash;
+    }
+
+    public void setAvatarHash(String avatarHash) {
+        this.avatarHash = avatarHash;
+    }
+
 }
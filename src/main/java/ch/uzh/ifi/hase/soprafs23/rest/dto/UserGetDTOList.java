@@ -0,0 +1,41 @@
+package ch.uzh.ifi.hase.soprafs23.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+
+import java.util.List;
+
+/**
+ * API representation of a list of users. It is written as a JSON array of UserGetDTOs
+ * straight from the entities by UserGetDTOListSerializer, so no intermediate DTO list
+ * is built for large listings.
+ */
+public class UserGetDTOList {
+
+    private final List<User> users;
+
+    private final UserStatus[] statuses;
+
+    public UserGetDTOList(List<User> users) {
+        this(users, null);
+    }
+
+    /**
+     * @param statuses the status to write for users.get(i) at index i, e.g. from the SessionStore;
+     *     where it or the whole array is null the status of the entity is written
+     */
+    public UserGetDTOList(List<User> users, UserStatus[] statuses) {
+        this.users = users;
+        this.statuses = statuses;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    public UserStatus getStatus(int index) {
+        UserStatus status = statuses == null ? null : statuses[index];
+        return status != null ? status : users.get(index).getStatus();
+    }
+
+}
@@ -0,0 +1,62 @@
+package ch.uzh.ifi.hase.soprafs23.rest.dto;
+
+/**
+ * Body of a JSON Merge Patch (RFC 7396) on a user. Jackson only calls the setters of the
+ * members present in the document, so the has* flags tell a member set to null (remove the
+ * value) apart from a member that is absent (keep the value).
+ */
+public class UserPatchDTO {
+
+    private String username;
+
+    private boolean usernamePresent;
+
+    // dd.MM.yyyy like in UserPutDTO
+    private String birthday;
+
+    private boolean birthdayPresent;
+
+    private String status;
+
+    private boolean statusPresent;
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+        this.usernamePresent = true;
+    }
+
+    public boolean hasUsername() {
+        return usernamePresent;
+    }
+
+    public String getBirthday() {
+        return birthday;
+    }
+
+    public void setBirthday(String birthday) {
+        this.birthday = birthday;
+        this.birthdayPresent = true;
+    }
+
+    public boolean hasBirthday() {
+        return birthdayPresent;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+        this.statusPresent = true;
+    }
+
+    public boolean hasStatus() {
+        return statusPresent;
+    }
+
+}
@@ -0,0 +1,69 @@
+package ch.uzh.ifi.hase.soprafs23.rest.dto;
+
+import java.util.Map;
+
+public class UserStatsGetDTO {
+
+    private long total;
+
+    private long online;
+
+    private long offline;
+
+    // ISO date (yyyy-MM-dd) -> number of users registered that day, oldest first
+    private Map<String, Long> registrationsPerDay;
+
+    // month name -> number of users born in that month, January first
+    private Map<String, Long> birthdayMonths;
+
+    private long unknownBirthdays;
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getOnline() {
+        return online;
+    }
+
+    public void setOnline(long online) {
+        this.online = online;
+    }
+
+    public long getOffline() {
+        return offline;
+    }
+
+    public void setOffline(long offline) {
+        this.offline = offline;
+    }
+
+    public Map<String, Long> getRegistrationsPerDay() {
+        return registrationsPerDay;
+    }
+
+    public void setRegistrationsPerDay(Map<String, Long> registrationsPerDay) {
+        this.registrationsPerDay = registrationsPerDay;
+    }
+
+    public Map<String, Long> getBirthdayMonths() {
+        return birthdayMonths;
+    }
+
+    public void setBirthdayMonths(Map<String, Long> birthdayMonths) {
+        this.birthdayMonths = birthdayMonths;
+    }
+
+    public long getUnknownBirthdays() {
+        return unknownBirthdays;
+    }
+
+    public void setUnknownBirthdays(long unknownBirthdays) {
+        this.unknownBirthdays = unknownBirthdays;
+    }
+
+}
@@ -0,0 +1,32 @@
+package ch.uzh.ifi.hase.soprafs23.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.service.UserDirectory;
+
+/**
+ * API representation of the summaries (id, username, status and creation date) of all users
+ * or of the users with one status. It is written as a JSON array straight from the
+ * UserDirectory by UserSummaryListSerializer, batch by batch, without an object per user.
+ */
+public class UserSummaryList {
+
+    private final UserDirectory directory;
+
+    private final UserStatus status;
+
+    public UserSummaryList(UserDirectory directory, UserStatus status) {
+        this.directory = directory;
+        this.status = status;
+    }
+
+    public UserDirectory getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the status of the listed users, null if all users are listed
+     */
+    public UserStatus getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs23.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+
+import java.util.Date;
+
+/**
+ * One user in an export or import file (NDJSON line or CSV row). Users are matched by
+ * username on import, so the id is not part of it.
+ */
+public class UserTransferDTO {
+
+    private String username;
+
+    private String password;
+
+    private String token;
+
+    private UserStatus status;
+
+    private Date creation_date;
+
+    private Date birthday;
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public UserStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(UserStatus status) {
+        this.status = status;
+    }
+
+    public Date getCreation_date() {
+        return creation_date;
+    }
+
+    public void setCreation_date(Date creation_date) {
+        this.creation_date = creation_date;
+    }
+
+    public Date getBirthday() {
+        return birthday;
+    }
+
+    public void setBirthday(Date birthday) {
+        this.birthday = birthday;
+    }
+
+}
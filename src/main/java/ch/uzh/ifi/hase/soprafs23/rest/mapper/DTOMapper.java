@@ -1,9 +1,12 @@
 package ch.uzh.ifi.hase.soprafs23.rest.mapper;
 
+import ch.uzh.ifi.hase.soprafs23.audit.AuditEvent;
 import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.AuditEventGetDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTransferDTO;
 import org.mapstruct.*;
 import org.mapstruct.factory.Mappers;
 
@@ -30,6 +33,7 @@ public interface DTOMapper {
     @Mapping(target = "status", ignore = true)
     @Mapping(target = "creation_date", ignore = true)
     @Mapping(target = "birthday", ignore = true)
+    @Mapping(target = "avatarHash", ignore = true)
     User convertUserPostDTOtoEntity(UserPostDTO userPostDTO);
 
     @Mapping(source = "id", target = "id")
@@ -39,6 +43,7 @@ public interface DTOMapper {
     @Mapping(source = "creation_date", target = "creation_date")
     @Mapping(source = "birthday", target = "birthday", dateFormat = "dd.MM.yyy")
     @Mapping(source = "token", target="token")
+    @Mapping(source = "avatarHash", target = "avatarHash")
     UserGetDTO convertEntityToUserGetDTO(User user);
 
     @Mapping(source = "username", target = "username")
@@ -48,6 +53,33 @@ public interface DTOMapper {
     @Mapping(target = "token", ignore = true)
     @Mapping(target = "password", ignore = true)
     @Mapping(target = "creation_date", ignore = true)
+    @Mapping(target = "avatarHash", ignore = true)
     User convertUserPutDTOtoEntity(UserPutDTO userPutDTO);
 
+    @Mapping(source = "username", target = "username")
+    @Mapping(source = "password", target = "password")
+    @Mapping(source = "token", target = "token")
+    @Mapping(source = "status", target = "status")
+    @Mapping(source = "creation_date", target = "creation_date")
+    @Mapping(source = "birthday", target = "birthday")
+    UserTransferDTO convertEntityToUserTransferDTO(User user);
+
+    @Mapping(source = "username", target = "username")
+    @Mapping(source = "password", target = "password")
+    @Mapping(source = "token", target = "token")
+    @Mapping(source = "status", target = "status")
+    @Mapping(source = "creation_date", target = "creation_date")
+    @Mapping(source = "birthday", target = "birthday")
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "avatarHash", ignore = true)
+    User convertUserTransferDTOtoEntity(UserTransferDTO userTransferDTO);
+
+    @Mapping(source = "sequence", target = "sequence")
+    @Mapping(source = "timestamp", target = "timestamp")
+    @Mapping(source = "type", target = "type")
+    @Mapping(source = "userId", target = "userId")
+    @Mapping(source = "username", target = "username")
+    @Mapping(source = "detail", target = "detail")
+    AuditEventGetDTO convertAuditEventToAuditEventGetDTO(AuditEvent auditEvent);
+
 }
@@ -0,0 +1,155 @@
+package ch.uzh.ifi.hase.soprafs23.rest.mapper;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTOList;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * UserGetDTOListSerializer
+ * Writes users as a JSON array of UserGetDTOs directly from the entities, without converting
+ * every user with DTOMapper first. The fields and their order must match what Jackson writes
+ * for a UserGetDTO, dates are formatted with the configured ObjectMapper settings. For Spring
+ * Boot's default settings (ISO-8601 in UTC) dates are formatted into a reused buffer instead of
+ * going through a DateFormat, which is the bulk of the serialization cost otherwise.
+ * Registered with the application's ObjectMapper as a @JsonComponent.
+ *
+ * @see UserGetDTO
+ * @see DTOMapper#convertEntityToUserGetDTO(User)
+ */
+@JsonComponent
+public class UserGetDTOListSerializer extends StdSerializer<UserGetDTOList> {
+
+    // field names are quoted and encoded once, like Jackson's own bean serializers do
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString USERNAME = new SerializedString("username");
+    private static final SerializableString STATUS = new SerializedString("status");
+    private static final SerializableString PASSWORD = new SerializedString("password");
+    private static final SerializableString CREATION_DATE = new SerializedString("creation_date");
+    private static final SerializableString BIRTHDAY = new SerializedString("birthday");
+    private static final SerializableString TOKEN = new SerializedString("token");
+    private static final SerializableString AVATAR_HASH = new SerializedString("avatarHash");
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    // StdDateFormat uses a GregorianCalendar, which switches to the Julian calendar before this instant
+    private static final long GREGORIAN_CUTOVER_MILLIS = new GregorianCalendar().getGregorianChange().getTime();
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    public UserGetDTOListSerializer() {
+        super(UserGetDTOList.class);
+    }
+
+    @Override
+    public void serialize(UserGetDTOList value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        char[] dateBuffer = usesDefaultIsoDates(provider) ? new char[29] : null;
+        gen.writeStartArray();
+        int index = 0;
+        for (User user : value.getUsers()) {
+            UserStatus status = value.getStatus(index++);
+            gen.writeStartObject();
+            gen.writeFieldName(ID);
+            if (user.getId() == null) {
+                gen.writeNull();
+            }
+            else {
+                gen.writeNumber(user.getId());
+            }
+            writeStringField(USERNAME, user.getUsername(), gen);
+            writeStringField(STATUS, status == null ? null : status.name(), gen);
+            writeStringField(PASSWORD, user.getPassword(), gen);
+            writeDateField(CREATION_DATE, user.getCreation_date(), gen, provider, dateBuffer);
+            writeDateField(BIRTHDAY, user.getBirthday(), gen, provider, dateBuffer);
+            writeStringField(TOKEN, user.getToken(), gen);
+            writeStringField(AVATAR_HASH, user.getAvatarHash(), gen);
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    private static void writeStringField(SerializableString name, String value, JsonGenerator gen)
+            throws IOException {
+        gen.writeFieldName(name);
+        gen.writeString(value);
+    }
+
+    private static void writeDateField(SerializableString name, Date date, JsonGenerator gen,
+                                       SerializerProvider provider, char[] dateBuffer) throws IOException {
+        gen.writeFieldName(name);
+        if (date == null) {
+            gen.writeNull();
+        }
+        else if (dateBuffer == null || !writeIsoDate(date.getTime(), gen, dateBuffer)) {
+            provider.defaultSerializeDateValue(date, gen);
+        }
+    }
+
+    /**
+     * @return true if dates are written by Jackson's StdDateFormat in UTC, e.g. 2023-03-01T09:15:00.000+00:00
+     */
+    static boolean usesDefaultIsoDates(SerializerProvider provider) {
+        DateFormat dateFormat = provider.getConfig().getDateFormat();
+        return !provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                && dateFormat.getClass() == StdDateFormat.class
+                && ((StdDateFormat) dateFormat).isColonIncludedInTimeZone()
+                && UTC.hasSameRules(provider.getTimeZone());
+    }
+
+    /**
+     * Writes the same text as StdDateFormat does in UTC, for dates from the Gregorian cutover (1582)
+     * up to the year 9999.
+     *
+     * @return false if the date is out of that range and has to be written by Jackson
+     */
+    static boolean writeIsoDate(long epochMillis, JsonGenerator gen, char[] buffer) throws IOException {
+        LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(epochMillis, MILLIS_PER_DAY));
+        if (epochMillis < GREGORIAN_CUTOVER_MILLIS || day.getYear() > 9999) {
+            return false;
+        }
+        int millisOfDay = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+        writeDigits(buffer, 0, day.getYear(), 4);
+        buffer[4] = '-';
+        writeDigits(buffer, 5, day.getMonthValue(), 2);
+        buffer[7] = '-';
+        writeDigits(buffer, 8, day.getDayOfMonth(), 2);
+        buffer[10] = 'T';
+        writeDigits(buffer, 11, millisOfDay / 3_600_000, 2);
+        buffer[13] = ':';
+        writeDigits(buffer, 14, millisOfDay / 60_000 % 60, 2);
+        buffer[16] = ':';
+        writeDigits(buffer, 17, millisOfDay / 1000 % 60, 2);
+        buffer[19] = '.';
+        writeDigits(buffer, 20, millisOfDay % 1000, 3);
+        buffer[23] = '+';
+        buffer[24] = '0';
+        buffer[25] = '0';
+        buffer[26] = ':';
+        buffer[27] = '0';
+        buffer[28] = '0';
+        gen.writeString(buffer, 0, 29);
+        return true;
+    }
+
+    private static void writeDigits(char[] buffer, int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ch.uzh.ifi.hase.soprafs23.rest.mapper;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserSummaryList;
+import ch.uzh.ifi.hase.soprafs23.service.UserDirectory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+
+/**
+ * UserSummaryListSerializer
+ * Writes the users of the UserDirectory as a JSON array of objects with the id, username,
+ * status and creation_date of a UserGetDTO. The users are copied out of the directory a batch
+ * at a time into a reused buffer and the usernames are written from their UTF-8 bytes, so a
+ * listing allocates next to nothing however many users it has. Dates are written like
+ * UserGetDTOListSerializer writes them.
+ * Registered with the application's ObjectMapper as a @JsonComponent.
+ *
+ * @see UserGetDTOListSerializer
+ */
+@JsonComponent
+public class UserSummaryListSerializer extends StdSerializer<UserSummaryList> {
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString USERNAME = new SerializedString("username");
+    private static final SerializableString STATUS = new SerializedString("status");
+    private static final SerializableString CREATION_DATE = new SerializedString("creation_date");
+
+    private static final SerializableString[] STATUS_NAMES = new SerializableString[UserStatus.values().length];
+
+    static {
+        for (UserStatus status : UserStatus.values()) {
+            STATUS_NAMES[status.ordinal()] = new SerializedString(status.name());
+        }
+    }
+
+    private static final int BATCH_SIZE = 512;
+
+    public UserSummaryListSerializer() {
+        super(UserSummaryList.class);
+    }
+
+    @Override
+    public void serialize(UserSummaryList value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        char[] dateBuffer = UserGetDTOListSerializer.usesDefaultIsoDates(provider) ? new char[29] : null;
+        // only the generator writing UTF-8 bytes (responses, not writeValueAsString) takes the username bytes as they are
+        boolean utf8 = gen instanceof UTF8JsonGenerator;
+        UserDirectory.Batch batch = new UserDirectory.Batch(BATCH_SIZE);
+        gen.writeStartArray();
+        int slot = 0;
+        while (slot >= 0) {
+            slot = value.getDirectory().read(value.getStatus(), slot, batch);
+            for (int i = 0; i < batch.size(); i++) {
+                gen.writeStartObject();
+                gen.writeFieldName(ID);
+                gen.writeNumber(batch.getId(i));
+                gen.writeFieldName(USERNAME);
+                if (utf8) {
+                    gen.writeUTF8String(batch.getUsernames(), batch.getUsernameOffset(i), batch.getUsernameLength(i));
+                }
+                else {
+                    gen.writeString(batch.getUsername(i));
+                }
+                gen.writeFieldName(STATUS);
+                gen.writeString(STATUS_NAMES[batch.getStatus(i).ordinal()]);
+                gen.writeFieldName(CREATION_DATE);
+                if (dateBuffer == null || !UserGetDTOListSerializer.writeIsoDate(batch.getCreationDate(i), gen, dateBuffer)) {
+                    provider.defaultSerializeDateValue(batch.getCreationDate(i), gen);
+                }
+                gen.writeEndObject();
+            }
+        }
+        gen.writeEndArray();
+    }
+}
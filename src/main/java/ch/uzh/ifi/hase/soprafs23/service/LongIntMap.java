@@ -0,0 +1,95 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import java.util.Arrays;
+
+/**
+ * Map from long keys to non-negative int values in two primitive arrays (open addressing with
+ * linear probing), about 16 bytes per entry instead of the ~80 of a HashMap&lt;Long, Integer&gt;
+ * entry with its boxed key and value. Entries cannot be removed. Not thread-safe.
+ */
+final class LongIntMap {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+
+    // value + 1, so that 0 marks a free position
+    private int[] values;
+
+    private int size;
+
+    LongIntMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * @return the value of the key, -1 if there is none
+     */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = index(key, mask); values[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    void put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negative value: " + value);
+        }
+        int mask = keys.length - 1;
+        int i = index(key, mask);
+        while (values[i] != 0) {
+            if (keys[i] == key) {
+                values[i] = value + 1;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value + 1;
+        if (++size > keys.length * 3 / 4) {
+            grow();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != 0) {
+                int i = index(oldKeys[j], mask);
+                while (values[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int index(long key, int mask) {
+        // ids are consecutive (or strided with sharding), the multiplication spreads them
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
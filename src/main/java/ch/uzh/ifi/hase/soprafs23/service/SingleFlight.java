@@ -0,0 +1,70 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single Flight
+ * Concurrent calls for the same key share one execution of the loader: the first caller
+ * runs it, every caller arriving while it is in flight waits for that result (or that
+ * exception) instead of running its own. Nothing is cached once the call has finished.
+ * The result is handed to all of these callers, so it should be immutable. Calls with a null
+ * key are not coalesced.
+ */
+class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    V execute(K key, Supplier<V> loader) {
+        if (key == null) {
+            return loader.get();
+        }
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+
+        try {
+            V value = loader.get();
+            call.complete(value);
+            return value;
+        }
+        catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * @return how many calls were answered by another caller's execution
+     */
+    long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    private V await(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        }
+        catch (CompletionException e) {
+            // rethrow what the loader threw, so every waiter sees the same error as the first caller
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Objects;
+import java.util.StringJoiner;
+
+/**
+ * Published by the services whenever a user is created or one of its fields changes,
+ * carrying the state before and after the change. Listeners that keep derived views
+ * (see UserStatistics) receive it after the commit of the transaction.
+ */
+public final class UserChangedEvent {
+
+    private final long userId;
+
+    private final State previous;
+
+    private final State current;
+
+    private UserChangedEvent(long userId, State previous, State current) {
+        this.userId = userId;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    public static UserChangedEvent created(User user) {
+        return new UserChangedEvent(user.getId(), null, State.of(user));
+    }
+
+    public static UserChangedEvent changed(State previous, User user) {
+        return new UserChangedEvent(user.getId(), previous, State.of(user));
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return the state before the change, null if the user was created
+     */
+    public State getPrevious() {
+        return previous;
+    }
+
+    public State getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return the changed fields with their old and new value, e.g. "status ONLINE -> OFFLINE",
+     * empty if nothing changed
+     */
+    public String describeChanges() {
+        if (previous == null) {
+            return "created";
+        }
+        StringJoiner changes = new StringJoiner(", ");
+        if (!Objects.equals(previous.username, current.username)) {
+            changes.add("username " + previous.username + " -> " + current.username);
+        }
+        if (previous.status != current.status) {
+            changes.add("status " + previous.status + " -> " + current.status);
+        }
+        if (!Objects.equals(previous.birthday, current.birthday)) {
+            changes.add("birthday " + formatBirthday(previous.birthday) + " -> " + formatBirthday(current.birthday));
+        }
+        if (!Objects.equals(previous.avatarHash, current.avatarHash)) {
+            changes.add("avatar " + formatAvatar(previous.avatarHash) + " -> " + formatAvatar(current.avatarHash));
+        }
+        return changes.toString();
+    }
+
+    private static String formatBirthday(Long birthday) {
+        return birthday == null ? "none" : new SimpleDateFormat("dd.MM.yyyy").format(new Date(birthday));
+    }
+
+    // the start of the hash is enough to tell the avatars of a user apart
+    private static String formatAvatar(String avatarHash) {
+        return avatarHash == null ? "none" : avatarHash.substring(0, Math.min(12, avatarHash.length()));
+    }
+
+    /**
+     * Immutable copy of the fields of a user that derived views are built from.
+     */
+    public static final class State {
+
+        private final String username;
+
+        private final UserStatus status;
+
+        private final long creationDate;
+
+        private final Long birthday;
+
+        private final String avatarHash;
+
+        private State(String username, UserStatus status, long creationDate, Long birthday, String avatarHash) {
+            this.username = username;
+            this.status = status;
+            this.creationDate = creationDate;
+            this.birthday = birthday;
+            this.avatarHash = avatarHash;
+        }
+
+        public static State of(User user) {
+            return new State(user.getUsername(), user.getStatus(), user.getCreation_date().getTime(),
+                    user.getBirthday() == null ? null : user.getBirthday().getTime(), user.getAvatarHash());
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public UserStatus getStatus() {
+            return status;
+        }
+
+        public Date getCreationDate() {
+            return new Date(creationDate);
+        }
+
+        /**
+         * @return the birthday, null if the user has not entered one
+         */
+        public Date getBirthday() {
+            return birthday == null ? null : new Date(birthday);
+        }
+
+        /**
+         * @return the SHA-256 of the avatar, null if the user has not uploaded one
+         */
+        public String getAvatarHash() {
+            return avatarHash;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTransferDTO;
+
+import java.io.IOException;
+import java.io.BufferedReader;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * CSV (RFC 4180) encoding of {@link UserTransferDTO}s used by the import/export pipeline.
+ * Dates are written as ISO-8601 instants, empty fields are read back as null.
+ */
+final class UserCsv {
+
+    static final List<String> HEADER = List.of("username", "password", "token", "status", "creation_date", "birthday");
+
+    private UserCsv() {
+    }
+
+    static void writeHeader(Writer out) throws IOException {
+        writeRow(out, HEADER);
+    }
+
+    static void writeUser(Writer out, UserTransferDTO user) throws IOException {
+        writeRow(out, List.of(
+                nullToEmpty(user.getUsername()),
+                nullToEmpty(user.getPassword()),
+                nullToEmpty(user.getToken()),
+                user.getStatus() == null ? "" : user.getStatus().name(),
+                formatDate(user.getCreation_date()),
+                formatDate(user.getBirthday())));
+    }
+
+    static UserTransferDTO toUser(List<String> row) {
+        if (row.size() != HEADER.size()) {
+            throw new IllegalArgumentException(String.format("expected %d columns but found %d", HEADER.size(), row.size()));
+        }
+        UserTransferDTO user = new UserTransferDTO();
+        user.setUsername(emptyToNull(row.get(0)));
+        user.setPassword(emptyToNull(row.get(1)));
+        user.setToken(emptyToNull(row.get(2)));
+        user.setStatus(row.get(3).isEmpty() ? null : UserStatus.valueOf(row.get(3)));
+        user.setCreation_date(parseDate(row.get(4)));
+        user.setBirthday(parseDate(row.get(5)));
+        return user;
+    }
+
+    /**
+     * Reads the next record, quoted fields may contain separators, line breaks and doubled
+     * quotes. Returns null at the end of the input.
+     */
+    static List<String> readRow(BufferedReader in) throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("unterminated quoted field");
+                }
+                if (c == '"') {
+                    c = in.read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                }
+                field.append((char) c);
+            }
+            else if (c == '"') {
+                quoted = true;
+            }
+            else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r') {
+                    in.mark(1);
+                    if (in.read() != '\n') {
+                        in.reset();
+                    }
+                }
+                fields.add(field.toString());
+                return fields;
+            }
+            else {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+    }
+
+    private static void writeRow(Writer out, List<String> fields) throws IOException {
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String field = fields.get(i);
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(field.replace("\"", "\"\""));
+                out.write('"');
+            }
+            else {
+                out.write(field);
+            }
+        }
+        out.write("\r\n");
+    }
+
+    private static String formatDate(Date date) {
+        return date == null ? "" : date.toInstant().toString();
+    }
+
+    private static Date parseDate(String value) {
+        return value.isEmpty() ? null : Date.from(Instant.parse(value));
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,409 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserSummaryList;
+import ch.uzh.ifi.hase.soprafs23.session.SessionStore;
+import ch.uzh.ifi.hase.soprafs23.sharding.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Compact in-memory directory of the id, username, status and creation date of every user,
+ * which is all the summary listings and presence queries need (GET /users?view=summary).
+ * Instead of an object per user it keeps parallel primitive arrays indexed by a slot per
+ * user: the ids, the creation dates in epoch millis, the UTF-8 bytes of all usernames one
+ * after the other in a single byte array, a bitset of the slots per status and a
+ * {@link LongIntMap} from id to slot. That is about 60 bytes per user plus the username,
+ * a handful of objects in total for the garbage collector, and listings by status skip
+ * straight from one set bit to the next.
+ * Like {@link UserStatistics}, it is built by one scan of the USER table before the server
+ * accepts requests and then updated by the {@link UserChangedEvent}s of committed
+ * transactions, so every instance only sees the changes it commits itself. The status of a
+ * listed user is the one of the {@link SessionStore} where it knows the user, so logins on
+ * other instances show up; the selection by status is still made with the local status.
+ */
+@Component
+public class UserDirectory implements SmartInitializingSingleton {
+
+    private static final UserStatus[] STATUSES = UserStatus.values();
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // bytes of replaced usernames from which on the username bytes are compacted instead of grown
+    private static final int MIN_COMPACTION_BYTES = 1 << 16;
+
+    private final Logger log = LoggerFactory.getLogger(UserDirectory.class);
+
+    private final UserRepository userRepository;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final ShardRouter shardRouter;
+
+    private final SessionStore sessionStore;
+
+    private final LongIntMap slotsById = new LongIntMap(INITIAL_CAPACITY);
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+
+    private long[] creationDates = new long[INITIAL_CAPACITY];
+
+    private int[] usernameOffsets = new int[INITIAL_CAPACITY];
+
+    private int[] usernameLengths = new int[INITIAL_CAPACITY];
+
+    private byte[] usernames = new byte[16 * INITIAL_CAPACITY];
+
+    // end of the used part of usernames
+    private int usernamesEnd;
+
+    // bytes in the used part that belong to usernames that were changed since
+    private int replacedUsernameBytes;
+
+    // one bit per slot and status
+    private final long[][] statusBits = new long[STATUSES.length][INITIAL_CAPACITY / 64];
+
+    private final int[] statusCounts = new int[STATUSES.length];
+
+    private int size;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public UserDirectory(@Qualifier("userRepository") UserRepository userRepository,
+                         PlatformTransactionManager transactionManager, ShardRouter shardRouter,
+                         SessionStore sessionStore) {
+        this.userRepository = userRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.shardRouter = shardRouter;
+        this.sessionStore = sessionStore;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Replaces the directory by a full scan of the USER table, of one shard after the other.
+     */
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        clear();
+        shardRouter.forEachShard(shard -> readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<User> users = userRepository.streamAll()) {
+                Iterator<User> iterator = users.iterator();
+                while (iterator.hasNext()) {
+                    User user = iterator.next();
+                    entityManager.detach(user);
+                    put(user.getId(), UserChangedEvent.State.of(user));
+                }
+            }
+        }));
+        log.info("Built user directory of {} users in {} ms", size, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // fallbackExecution: events published outside of a transaction are applied right away
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onUserChanged(UserChangedEvent event) {
+        put(event.getUserId(), event.getCurrent());
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int count(UserStatus status) {
+        return statusCounts[status.ordinal()];
+    }
+
+    /**
+     * @param status only users with this status, e.g. "ONLINE", all users if null
+     */
+    public UserSummaryList getSummaries(String status) {
+        return new UserSummaryList(this, status == null ? null : UserService.parseStatus(status));
+    }
+
+    /**
+     * Copies the users from the given slot on into the batch, as many as fit. Users are kept
+     * in the order the directory learned about them: the users of the scan at the start by
+     * id (shard by shard with sharding), then the users registered since.
+     * Only the copying holds the lock of the directory, so neither the lookup of the batch in
+     * the SessionStore nor writing it to a slow client holds up the updates. Users whose status
+     * in the SessionStore is not the requested one are left out, so a batch may be empty.
+     *
+     * @param status only users with this status, all users if null
+     * @param from   0 for the first batch, the returned slot for the next ones
+     * @return the slot to read the next batch from, -1 if there are no further users
+     */
+    public int read(UserStatus status, int from, Batch batch) {
+        int next = copy(status, from, batch);
+        sessionStore.findStatuses(batch.ids, batch.size, batch.sharedStatuses);
+        batch.applySharedStatuses(status);
+        return next;
+    }
+
+    private synchronized int copy(UserStatus status, int from, Batch batch) {
+        batch.clear();
+        int slot = nextSlot(status, from);
+        while (slot >= 0 && batch.size < batch.ids.length) {
+            batch.add(ids[slot], creationDates[slot], statusOf(slot), usernames, usernameOffsets[slot],
+                    usernameLengths[slot]);
+            slot = nextSlot(status, slot + 1);
+        }
+        return slot;
+    }
+
+    private int nextSlot(UserStatus status, int from) {
+        if (from >= size) {
+            return -1;
+        }
+        if (status == null) {
+            return from;
+        }
+        long[] bits = statusBits[status.ordinal()];
+        int word = from >>> 6;
+        long unread = bits[word] & (-1L << from);
+        while (unread == 0) {
+            if (++word == bits.length) {
+                return -1;
+            }
+            unread = bits[word];
+        }
+        int slot = word * 64 + Long.numberOfTrailingZeros(unread);
+        return slot < size ? slot : -1;
+    }
+
+    private void put(long id, UserChangedEvent.State user) {
+        int slot = slotsById.get(id);
+        if (slot < 0) {
+            slot = size;
+            ensureCapacity(size + 1);
+            size++;
+            slotsById.put(id, slot);
+            ids[slot] = id;
+            creationDates[slot] = user.getCreationDate().getTime();
+            usernameLengths[slot] = -1;
+        }
+        setUsername(slot, user.getUsername());
+        setStatus(slot, user.getStatus());
+    }
+
+    private void setUsername(int slot, String username) {
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        int length = usernameLengths[slot];
+        if (length >= 0) {
+            int offset = usernameOffsets[slot];
+            if (Arrays.equals(usernames, offset, offset + length, bytes, 0, bytes.length)) {
+                return;
+            }
+            replacedUsernameBytes += length;
+        }
+        if (usernamesEnd + bytes.length > usernames.length) {
+            makeRoom(bytes.length);
+        }
+        System.arraycopy(bytes, 0, usernames, usernamesEnd, bytes.length);
+        usernameOffsets[slot] = usernamesEnd;
+        usernameLengths[slot] = bytes.length;
+        usernamesEnd += bytes.length;
+    }
+
+    /**
+     * Drops the bytes of changed usernames if they make up a good part of the array, grows
+     * the array otherwise.
+     */
+    private void makeRoom(int bytes) {
+        int live = usernamesEnd - replacedUsernameBytes;
+        int capacity = usernames.length;
+        if (replacedUsernameBytes < MIN_COMPACTION_BYTES || replacedUsernameBytes < live) {
+            capacity = Math.max(capacity * 2, usernamesEnd + bytes);
+        }
+        else {
+            capacity = Math.max(capacity, live + bytes);
+        }
+        byte[] compacted = new byte[capacity];
+        int end = 0;
+        for (int slot = 0; slot < size; slot++) {
+            int length = usernameLengths[slot];
+            if (length > 0) {
+                System.arraycopy(usernames, usernameOffsets[slot], compacted, end, length);
+            }
+            usernameOffsets[slot] = end;
+            end += Math.max(length, 0);
+        }
+        usernames = compacted;
+        usernamesEnd = end;
+        replacedUsernameBytes = 0;
+    }
+
+    private void setStatus(int slot, UserStatus status) {
+        UserStatus previous = statusOf(slot);
+        if (previous == status) {
+            return;
+        }
+        if (previous != null) {
+            statusBits[previous.ordinal()][slot >>> 6] &= ~(1L << slot);
+            statusCounts[previous.ordinal()]--;
+        }
+        statusBits[status.ordinal()][slot >>> 6] |= 1L << slot;
+        statusCounts[status.ordinal()]++;
+    }
+
+    private UserStatus statusOf(int slot) {
+        for (UserStatus status : STATUSES) {
+            if ((statusBits[status.ordinal()][slot >>> 6] & (1L << slot)) != 0) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int grown = Math.max(ids.length * 2, capacity);
+        ids = Arrays.copyOf(ids, grown);
+        creationDates = Arrays.copyOf(creationDates, grown);
+        usernameOffsets = Arrays.copyOf(usernameOffsets, grown);
+        usernameLengths = Arrays.copyOf(usernameLengths, grown);
+        for (int i = 0; i < statusBits.length; i++) {
+            statusBits[i] = Arrays.copyOf(statusBits[i], (grown + 63) >>> 6);
+        }
+    }
+
+    private void clear() {
+        slotsById.clear();
+        for (long[] bits : statusBits) {
+            Arrays.fill(bits, 0);
+        }
+        Arrays.fill(statusCounts, 0);
+        usernamesEnd = 0;
+        replacedUsernameBytes = 0;
+        size = 0;
+    }
+
+    /**
+     * Reusable buffer for {@link #read(UserStatus, int, Batch)}, the users of a batch stay
+     * valid until it is read into again.
+     */
+    public static final class Batch {
+
+        private final long[] ids;
+
+        private final long[] creationDates;
+
+        private final UserStatus[] statuses;
+
+        // filled from the SessionStore, null for the users it does not know
+        private final UserStatus[] sharedStatuses;
+
+        private final int[] usernameOffsets;
+
+        private final int[] usernameLengths;
+
+        private byte[] usernames;
+
+        private int usernamesEnd;
+
+        private int size;
+
+        public Batch(int capacity) {
+            ids = new long[capacity];
+            creationDates = new long[capacity];
+            statuses = new UserStatus[capacity];
+            sharedStatuses = new UserStatus[capacity];
+            usernameOffsets = new int[capacity];
+            usernameLengths = new int[capacity];
+            usernames = new byte[16 * capacity];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getId(int i) {
+            return ids[i];
+        }
+
+        public long getCreationDate(int i) {
+            return creationDates[i];
+        }
+
+        public UserStatus getStatus(int i) {
+            return statuses[i];
+        }
+
+        /**
+         * @return the array holding the UTF-8 bytes of the usernames, see
+         * {@link #getUsernameOffset(int)} and {@link #getUsernameLength(int)}
+         */
+        public byte[] getUsernames() {
+            return usernames;
+        }
+
+        public int getUsernameOffset(int i) {
+            return usernameOffsets[i];
+        }
+
+        public int getUsernameLength(int i) {
+            return usernameLengths[i];
+        }
+
+        public String getUsername(int i) {
+            return new String(usernames, usernameOffsets[i], usernameLengths[i], StandardCharsets.UTF_8);
+        }
+
+        private void add(long id, long creationDate, UserStatus status, byte[] source, int offset, int length) {
+            if (usernamesEnd + length > usernames.length) {
+                usernames = Arrays.copyOf(usernames, Math.max(usernames.length * 2, usernamesEnd + length));
+            }
+            System.arraycopy(source, offset, usernames, usernamesEnd, length);
+            ids[size] = id;
+            creationDates[size] = creationDate;
+            statuses[size] = status;
+            usernameOffsets[size] = usernamesEnd;
+            usernameLengths[size] = length;
+            usernamesEnd += length;
+            size++;
+        }
+
+        private void applySharedStatuses(UserStatus status) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                UserStatus current = sharedStatuses[i] != null ? sharedStatuses[i] : statuses[i];
+                if (status != null && current != status) {
+                    continue;
+                }
+                ids[kept] = ids[i];
+                creationDates[kept] = creationDates[i];
+                statuses[kept] = current;
+                usernameOffsets[kept] = usernameOffsets[i];
+                usernameLengths[kept] = usernameLengths[i];
+                kept++;
+            }
+            size = kept;
+        }
+
+        private void clear() {
+            size = 0;
+            usernamesEnd = 0;
+        }
+    }
+}
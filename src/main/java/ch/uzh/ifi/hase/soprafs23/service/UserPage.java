@@ -0,0 +1,71 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * One page of a sorted user listing together with the cursor of the next page.
+ * The cursor is the creation date and id of the last user of the page, encoded opaquely
+ * so that clients pass it back unchanged instead of building it themselves.
+ */
+public final class UserPage {
+
+    private final List<User> users;
+
+    private final String nextCursor;
+
+    public UserPage(List<User> users, String nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    /**
+     * @return the cursor of the next page, null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    static String encodeCursor(User last) {
+        String position = last.getCreation_date().getTime() + ":" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Position after which a page continues, decoded from a cursor.
+     */
+    static final class Cursor {
+
+        final Date creationDate;
+
+        final long id;
+
+        private Cursor(Date creationDate, long id) {
+            this.creationDate = creationDate;
+            this.id = id;
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+                int separator = position.indexOf(':');
+                return new Cursor(new Date(Long.parseLong(position.substring(0, separator))),
+                        Long.parseLong(position.substring(separator + 1)));
+            }
+            catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        String.format("The cursor %s is not valid!", cursor));
+            }
+        }
+    }
+}
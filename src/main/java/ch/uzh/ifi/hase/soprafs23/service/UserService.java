@@ -1,20 +1,37 @@
 package ch.uzh.ifi.hase.soprafs23.service;
 
+import ch.uzh.ifi.hase.soprafs23.audit.AuditTrail;
 import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs23.entity.User;
 import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPatchDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs23.session.SessionStore;
+import ch.uzh.ifi.hase.soprafs23.sharding.ShardKey;
+import ch.uzh.ifi.hase.soprafs23.sharding.ShardRouter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 /**
@@ -32,20 +49,89 @@ public class UserService {
 
     private final UserRepository userRepository;
 
+    private final SessionStore sessionStore;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final AuditTrail auditTrail;
+
+    private final ShardRouter shardRouter;
+
+    // concurrent identical lookups share one in-flight query, see SingleFlight. They share only
+    // the id: the query puts the user into the second-level cache, from where every caller loads
+    // its own instance, since a managed entity must not be used by the sessions of other threads
+    private final SingleFlight<Long, Boolean> profileReads = new SingleFlight<>();
+
+    private final SingleFlight<String, Optional<Long>> usernameReads = new SingleFlight<>();
+
     @Autowired
-    public UserService(@Qualifier("userRepository") UserRepository userRepository) {
+    public UserService(@Qualifier("userRepository") UserRepository userRepository, SessionStore sessionStore,
+                       ApplicationEventPublisher eventPublisher, AuditTrail auditTrail, ShardRouter shardRouter) {
         this.userRepository = userRepository;
+        this.sessionStore = sessionStore;
+        this.eventPublisher = eventPublisher;
+        this.auditTrail = auditTrail;
+        this.shardRouter = shardRouter;
     }
 
     public List<User> getUsers() {
-        return this.userRepository.findAll();
+        if (!shardRouter.isSharded()) {
+            return this.userRepository.findAll();
+        }
+        List<User> users = new ArrayList<>();
+        shardRouter.onAllShards(shard -> userRepository.findAllOnShard(shardRouter.getShards(), shard))
+                .forEach(users::addAll);
+        users.sort(Comparator.comparing(User::getId));
+        return users;
+    }
+
+    /**
+     * One page of the users sorted by creation date, optionally only those with a given status.
+     * The page continues after the cursor of the previous page, so deep pages cost as much as
+     * the first one, and users created meanwhile neither shift nor repeat entries.
+     *
+     * @param status only users with this status, all users if null
+     * @param sort   "creation_date,desc", "creation_date,asc" or just "creation_date" (ascending)
+     * @param cursor the next cursor of the previous page, null for the first page
+     * @param limit  the maximum number of users on the page
+     */
+    @Transactional(readOnly = true)
+    public UserPage getUserPage(String status, String sort, String cursor, int limit) {
+        UserStatus userStatus = status == null ? null : parseStatus(status);
+        boolean descending = parseDescending(sort);
+        UserPage.Cursor after = cursor == null ? null : UserPage.Cursor.decode(cursor);
+
+        // one more row than asked for tells whether there is a next page, without a count query
+        List<User> users = findPage(userStatus, descending,
+                after == null ? null : after.creationDate, after == null ? null : after.id, limit + 1);
+        if (users.size() <= limit) {
+            return new UserPage(users, null);
+        }
+        List<User> page = users.subList(0, limit);
+        return new UserPage(page, UserPage.encodeCursor(page.get(limit - 1)));
+    }
+
+    private List<User> findPage(UserStatus status, boolean descending, Date afterCreationDate, Long afterId, int limit) {
+        if (!shardRouter.isSharded()) {
+            return userRepository.findPage(status, descending, afterCreationDate, afterId, limit);
+        }
+        // the page is among the first limit users of every shard
+        List<User> users = new ArrayList<>();
+        shardRouter.onAllShards(shard -> userRepository.findPage(status, descending, afterCreationDate, afterId, limit))
+                .forEach(users::addAll);
+        Comparator<User> order = Comparator.comparing(User::getCreation_date).thenComparing(User::getId);
+        users.sort(descending ? order.reversed() : order);
+        return users.size() <= limit ? users : users.subList(0, limit);
     }
 
     // This method creates a new User object.
     // First, it takes a newUser User object and then sets a token, status and creation date attributes to it.
     // Then, is newUser passes the check (that there's no user with the same Username in the repo, an instance
     // of newUser is saved into a repo)
-    public User createUser(User newUser) {
+    public User createUser(@ShardKey User newUser) {
+        if (newUser.getUsername() == null || newUser.getUsername().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A username is required to register!");
+        }
         newUser.setToken(UUID.randomUUID().toString());
         newUser.setStatus(UserStatus.ONLINE);
         newUser.setCreation_date(new Date());
@@ -54,6 +140,12 @@ public class UserService {
         // flush() is called
         newUser = userRepository.save(newUser);
         userRepository.flush(); // To save
+        // sessions and presence are shared with the other instances, see SessionStore
+        shareAfterCommit(newUser.getToken(), newUser.getId(), newUser.getStatus());
+        // derived views like UserStatistics are updated once the transaction commits
+        eventPublisher.publishEvent(UserChangedEvent.created(newUser));
+        // written asynchronously after the commit, see AuditTrail
+        auditTrail.registered(newUser);
 
         log.debug("Created Information for User: {}", newUser);
         return newUser;
@@ -69,32 +161,63 @@ public class UserService {
      */
     // Method for Register, checks if a user with the same Username exits. If yes, deny entry, if no, create new user
     private void checkIfUserExists(User userToBeCreated) {
-        User userByUsername = userRepository.findByUsername(userToBeCreated.getUsername());
+        User userByUsername = findByUsername(userToBeCreated.getUsername());
 
         String message = "The provided username is not unique. Therefore, the user could not be registered!";
-        if (userByUsername != null) {
+        // with sharding this runs on the home shard of the username, which also routes to renamed users
+        if (userByUsername != null || shardRouter.isRouted(userToBeCreated.getUsername())) {
             throw new ResponseStatusException(HttpStatus.CONFLICT,
                     message);
         }
     }
 
-    public User getUser(User userToBeLoggedIn) {
-        User userByUsername = userRepository.findByUsername(userToBeLoggedIn.getUsername());
+    public User getUser(@ShardKey User userToBeLoggedIn) {
+        User userByUsername = findByUsername(userToBeLoggedIn.getUsername());
 
         String messageNoUser = "The user with the provided username does not exist!";
         String messageWrongPassword = "The provided password is wrong!";
         if (userByUsername == null) {
+            auditTrail.loginFailed(userToBeLoggedIn.getUsername(), null, "unknown username");
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED,
                     messageNoUser);
         }
         else if (!(userByUsername.getPassword().equals(userToBeLoggedIn.getPassword()))) {
+            auditTrail.loginFailed(userByUsername.getUsername(), userByUsername.getId(), "wrong password");
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED,
                     messageWrongPassword);
         }
 
         log.debug("The user is allowed to login: {}", userByUsername);
+        UserChangedEvent.State previous = UserChangedEvent.State.of(userByUsername);
         userByUsername.setStatus(UserStatus.ONLINE);
-        return userByUsername;
+        // the instance may have been loaded by a concurrent lookup, so it is merged into this
+        // transaction explicitly instead of relying on dirty checking
+        User loggedInUser = userRepository.save(userByUsername);
+        shareAfterCommit(loggedInUser.getToken(), loggedInUser.getId(), UserStatus.ONLINE);
+        if (previous.getStatus() != UserStatus.ONLINE) {
+            eventPublisher.publishEvent(UserChangedEvent.changed(previous, loggedInUser));
+        }
+        auditTrail.loggedIn(loggedInUser);
+        return loggedInUser;
+    }
+
+    /**
+     * Looks up a user by username. Concurrent lookups of the same username share a single query.
+     *
+     * @return the user, or null if no user has this username (or the username is null)
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public User findByUsername(@ShardKey String username) {
+        if (username == null) {
+            return null;
+        }
+        Optional<Long> id = usernameReads.execute(username,
+                () -> Optional.ofNullable(userRepository.findByUsername(username)).map(User::getId));
+        // the caller that ran the query finds the user in its persistence context, the others in the
+        // second-level cache; a user deleted or renamed in between is reported as not found
+        return id.flatMap(userRepository::findById)
+                .filter(user -> username.equals(user.getUsername()))
+                .orElse(null);
     }
 
     /*
@@ -103,18 +226,70 @@ public class UserService {
        * @see User
 
      */
-    public User getUserProfile(long id) {
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public User getUserProfile(@ShardKey long id) {
         String message = "User with id %d was not found!";
-        return userRepository.findById(id).
-                orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(message, id)));
+        // see findByUsername for why only the outcome of the shared query is shared
+        Optional<User> user = profileReads.execute(id, () -> userRepository.findById(id).isPresent())
+                ? userRepository.findById(id) : Optional.empty();
+        return user.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(message, id)));
+    }
+
+    /**
+     * Resolves several profiles at once: ids found in the second-level cache are served
+     * from there, all others are loaded with a single IN query instead of one findById per id.
+     * Ids that do not exist are simply absent from the returned map, so the caller
+     * decides how to report them.
+     *
+     * @param ids the ids to look up, duplicates are allowed
+     * @return the found users, keyed by their id
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, User> getUserProfiles(Collection<Long> ids) {
+        Map<Long, User> usersById = new HashMap<>();
+        if (ids.isEmpty()) {
+            return usersById;
+        }
+        if (!shardRouter.isSharded()) {
+            for (User user : userRepository.findAllByIdCacheFirst(ids)) {
+                usersById.put(user.getId(), user);
+            }
+            return usersById;
+        }
+        Map<Integer, List<Long>> idsByShard = new HashMap<>();
+        for (Long id : ids) {
+            idsByShard.computeIfAbsent(shardRouter.shardOf(id), shard -> new ArrayList<>()).add(id);
+        }
+        for (List<User> users : shardRouter.onAllShards(shard -> idsByShard.containsKey(shard)
+                ? userRepository.findAllByIdCacheFirst(idsByShard.get(shard)) : List.<User>of())) {
+            for (User user : users) {
+                usersById.put(user.getId(), user);
+            }
+        }
+        return usersById;
+    }
+
+    /**
+     * @return number of profile and username lookups that were answered by a concurrent identical lookup
+     */
+    public long getCoalescedReads() {
+        return profileReads.getCoalescedCount() + usernameReads.getCoalescedCount();
     }
 
-    public void updateUserProfile(UserPutDTO userPutDTO, long id) {
+    public void updateUserProfile(UserPutDTO userPutDTO, @ShardKey long id) {
         String messageId = "User with id %d was not found!";
         User userToUpdate = userRepository.findById(id).
                 orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(messageId, id)));
+        UserChangedEvent.State previous = UserChangedEvent.State.of(userToUpdate);
 
-        if (userPutDTO.getUsername() != null) {
+        if (userPutDTO.getUsername() != null && !userPutDTO.getUsername().equals(userToUpdate.getUsername())) {
+            // see patchUserProfile, the username may be taken on this or on another shard
+            User userByUsername = findByUsername(userPutDTO.getUsername());
+            if (userByUsername != null && !userByUsername.getId().equals(id)
+                    || !shardRouter.rename(id, userToUpdate.getUsername(), userPutDTO.getUsername())) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "The provided username is not unique. Therefore, the user could not be updated!");
+            }
             userToUpdate.setUsername(userPutDTO.getUsername());
         }
 
@@ -124,7 +299,154 @@ public class UserService {
 
         if (userPutDTO.getStatus() != null && !userPutDTO.getStatus().isEmpty()) {
             userToUpdate.setStatus(UserStatus.valueOf(userPutDTO.getStatus()));
+            shareAfterCommit(null, id, userToUpdate.getStatus());
         }
         userRepository.save(userToUpdate);
+        publishChange(previous, userToUpdate);
+    }
+
+    /**
+     * Applies a JSON Merge Patch: only the members present in the patch are changed.
+     * The user usually comes from the second-level cache and stays managed, so there is no
+     * save() and the commit writes nothing but an UPDATE of the changed columns
+     * (see @DynamicUpdate on User), e.g. only status for a status change.
+     */
+    public void patchUserProfile(UserPatchDTO userPatchDTO, @ShardKey long id) {
+        String messageId = "User with id %d was not found!";
+        User userToPatch = userRepository.findById(id).
+                orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(messageId, id)));
+        UserChangedEvent.State previous = UserChangedEvent.State.of(userToPatch);
+
+        if (userPatchDTO.hasUsername()) {
+            String username = userPatchDTO.getUsername();
+            if (username == null || username.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The username cannot be removed!");
+            }
+            if (!username.equals(userToPatch.getUsername())) {
+                User userByUsername = findByUsername(username);
+                // the user stays on its shard, so the username must not be taken on another one;
+                // ShardRouter checks that on the home shard of the username
+                if (userByUsername != null && !userByUsername.getId().equals(id)
+                        || !shardRouter.rename(id, userToPatch.getUsername(), username)) {
+                    throw new ResponseStatusException(HttpStatus.CONFLICT,
+                            "The provided username is not unique. Therefore, the user could not be updated!");
+                }
+                userToPatch.setUsername(username);
+            }
+        }
+
+        if (userPatchDTO.hasBirthday()) {
+            userToPatch.setBirthday(userPatchDTO.getBirthday() == null ? null : parseBirthday(userPatchDTO.getBirthday()));
+        }
+
+        if (userPatchDTO.hasStatus()) {
+            UserStatus status = parseStatus(userPatchDTO.getStatus());
+            if (status != userToPatch.getStatus()) {
+                userToPatch.setStatus(status);
+                shareAfterCommit(null, id, status);
+            }
+        }
+        publishChange(previous, userToPatch);
+    }
+
+    /**
+     * Points the user to an avatar in the AvatarStore; only the hash is written to the table.
+     */
+    public void updateAvatar(@ShardKey long id, String avatarHash) {
+        String messageId = "User with id %d was not found!";
+        User user = userRepository.findById(id).
+                orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(messageId, id)));
+        UserChangedEvent.State previous = UserChangedEvent.State.of(user);
+        user.setAvatarHash(avatarHash);
+        publishChange(previous, user);
+    }
+
+    /**
+     * @return the status of the user as the SessionStore knows it, which includes status changes
+     *     made on other instances, or null if the store knows nothing about the user
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public UserStatus getSharedStatus(long id) {
+        return sessionStore.findStatus(id);
+    }
+
+    /**
+     * Batch version of {@link #getSharedStatus(long)} for listings.
+     *
+     * @return the shared status of users.get(i) at index i, null where the store knows nothing
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public UserStatus[] getSharedStatuses(List<User> users) {
+        long[] ids = new long[users.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = users.get(i).getId();
+        }
+        UserStatus[] statuses = new UserStatus[ids.length];
+        sessionStore.findStatuses(ids, ids.length, statuses);
+        return statuses;
+    }
+
+    // the store is not part of the transaction, so it is only written once the row is committed;
+    // a rollback then leaves no session or status behind that the table does not have
+    private void shareAfterCommit(String token, long userId, UserStatus status) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    share(token, userId, status);
+                }
+            });
+        }
+        else {
+            share(token, userId, status);
+        }
+    }
+
+    private void share(String token, long userId, UserStatus status) {
+        if (token != null) {
+            sessionStore.putSession(token, userId);
+        }
+        sessionStore.putStatus(userId, status);
+    }
+
+    private void publishChange(UserChangedEvent.State previous, User user) {
+        UserChangedEvent event = UserChangedEvent.changed(previous, user);
+        eventPublisher.publishEvent(event);
+        String changes = event.describeChanges();
+        if (!changes.isEmpty()) {
+            auditTrail.profileChanged(user, changes);
+        }
+    }
+
+    private static Date parseBirthday(String birthday) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy");
+        dateFormat.setLenient(false);
+        try {
+            return dateFormat.parse(birthday);
+        }
+        catch (ParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("The birthday %s is not a date of the form dd.MM.yyyy!", birthday));
+        }
+    }
+
+    private static boolean parseDescending(String sort) {
+        if (sort == null || sort.equals("creation_date") || sort.equals("creation_date,asc")) {
+            return false;
+        }
+        if (sort.equals("creation_date,desc")) {
+            return true;
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                String.format("The sort order %s is not valid, users are sorted by creation_date,asc or creation_date,desc!", sort));
+    }
+
+    static UserStatus parseStatus(String status) {
+        for (UserStatus userStatus : UserStatus.values()) {
+            if (userStatus.name().equals(status)) {
+                return userStatus;
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("The status %s is not valid!", status));
     }
 }
@@ -0,0 +1,27 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the UserService internals on the actuator metrics endpoint
+ * (e.g., /actuator/metrics/users.reads.coalesced).
+ */
+@Component
+public class UserServiceMetrics implements MeterBinder {
+
+    private final UserService userService;
+
+    public UserServiceMetrics(UserService userService) {
+        this.userService = userService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("users.reads.coalesced", userService, UserService::getCoalescedReads)
+                .description("Profile and username lookups answered by a concurrent identical lookup")
+                .register(registry);
+    }
+}
@@ -0,0 +1,180 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserStatsGetDTO;
+import ch.uzh.ifi.hase.soprafs23.sharding.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * In-memory read model of aggregate user statistics: registrations per day and users per
+ * birthday month. It is built by one scan of the USER table before the server accepts
+ * requests and from then on updated by the {@link UserChangedEvent}s of committed
+ * transactions, so reading it does not depend on the number of users. The users per status
+ * are not counted twice, they are taken from the {@link UserDirectory}.
+ * Days and months are taken in the default time zone, the one birthdays are parsed in.
+ * Every instance keeps its own model from the changes it commits itself.
+ * A change is counted as the difference to what was counted for the user before, not to the
+ * previous state in the event: two concurrent transactions that both change a birthday from
+ * March to May both report March as the previous one, but only the first moves the user.
+ */
+@Component
+public class UserStatistics implements SmartInitializingSingleton {
+
+    // the birthday bucket of users without a birthday, the others are counted by month ordinal
+    private static final int UNKNOWN_BIRTHDAY = 12;
+
+    private final Logger log = LoggerFactory.getLogger(UserStatistics.class);
+
+    private final UserRepository userRepository;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final ShardRouter shardRouter;
+
+    private final UserDirectory userDirectory;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    // the birthday bucket each user is counted in, by id
+    private final LongIntMap birthdayBucketsById = new LongIntMap(1024);
+
+    private final long[] usersByBirthdayMonth = new long[12];
+
+    private final NavigableMap<LocalDate, Long> registrationsPerDay = new TreeMap<>();
+
+    private long unknownBirthdays;
+
+    private long total;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public UserStatistics(@Qualifier("userRepository") UserRepository userRepository,
+                          PlatformTransactionManager transactionManager, ShardRouter shardRouter,
+                          UserDirectory userDirectory) {
+        this.userRepository = userRepository;
+        this.shardRouter = shardRouter;
+        this.userDirectory = userDirectory;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        rebuild();
+    }
+
+    /**
+     * Replaces the model by a full scan of the USER table, of one shard after the other.
+     */
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        clear();
+        shardRouter.forEachShard(shard -> readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<User> users = userRepository.streamAll()) {
+                Iterator<User> iterator = users.iterator();
+                while (iterator.hasNext()) {
+                    User user = iterator.next();
+                    entityManager.detach(user);
+                    apply(user.getId(), UserChangedEvent.State.of(user));
+                }
+            }
+        }));
+        log.info("Built user statistics of {} users in {} ms", total, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // fallbackExecution: events published outside of a transaction are applied right away
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onUserChanged(UserChangedEvent event) {
+        apply(event.getUserId(), event.getCurrent());
+    }
+
+    /**
+     * @param days number of days, up to today, to report the registrations of
+     */
+    public synchronized UserStatsGetDTO getStatistics(int days) {
+        UserStatsGetDTO stats = new UserStatsGetDTO();
+        stats.setTotal(total);
+        stats.setOnline(userDirectory.count(UserStatus.ONLINE));
+        stats.setOffline(userDirectory.count(UserStatus.OFFLINE));
+
+        Map<String, Long> registrations = new LinkedHashMap<>();
+        LocalDate from = LocalDate.now(zone).minusDays(days - 1L);
+        for (Map.Entry<LocalDate, Long> day : registrationsPerDay.tailMap(from, true).entrySet()) {
+            registrations.put(day.getKey().toString(), day.getValue());
+        }
+        stats.setRegistrationsPerDay(registrations);
+
+        Map<String, Long> birthdayMonths = new LinkedHashMap<>();
+        for (Month month : Month.values()) {
+            birthdayMonths.put(month.name(), usersByBirthdayMonth[month.ordinal()]);
+        }
+        stats.setBirthdayMonths(birthdayMonths);
+        stats.setUnknownBirthdays(unknownBirthdays);
+        return stats;
+    }
+
+    private void apply(long id, UserChangedEvent.State user) {
+        int counted = birthdayBucketsById.get(id);
+        int bucket = birthdayBucketOf(user);
+        if (counted == bucket) {
+            return;
+        }
+        if (counted < 0) {
+            // the creation date never changes, so registrations are only counted once
+            total++;
+            LocalDate registered = Instant.ofEpochMilli(user.getCreationDate().getTime()).atZone(zone).toLocalDate();
+            registrationsPerDay.merge(registered, 1L, Long::sum);
+        }
+        else {
+            count(counted, -1);
+        }
+        count(bucket, 1);
+        birthdayBucketsById.put(id, bucket);
+    }
+
+    private int birthdayBucketOf(UserChangedEvent.State user) {
+        return user.getBirthday() == null ? UNKNOWN_BIRTHDAY
+                : Instant.ofEpochMilli(user.getBirthday().getTime()).atZone(zone).getMonth().ordinal();
+    }
+
+    private void count(int birthdayBucket, int delta) {
+        if (birthdayBucket == UNKNOWN_BIRTHDAY) {
+            unknownBirthdays += delta;
+        }
+        else {
+            usersByBirthdayMonth[birthdayBucket] += delta;
+        }
+    }
+
+    private void clear() {
+        birthdayBucketsById.clear();
+        total = 0;
+        unknownBirthdays = 0;
+        Arrays.fill(usersByBirthdayMonth, 0);
+        registrationsPerDay.clear();
+    }
+}
@@ -0,0 +1,404 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserImportResultDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTransferDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs23.session.SessionStore;
+import ch.uzh.ifi.hase.soprafs23.sharding.ShardContext;
+import ch.uzh.ifi.hase.soprafs23.sharding.ShardRouter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bulk export and import of the USER table.
+ * Both directions stream: the export reads the table through a forward-only cursor and
+ * detaches every user once it is written, the import reads the file record by record and
+ * upserts it in chunks of users.transfer.chunk-size, each chunk in its own transaction
+ * followed by a clear of the persistence context. Memory use is therefore bounded by the
+ * chunk size and not by the size of the table or the file.
+ * With sharding (see ShardRouter) the export reads one shard after the other, and every
+ * chunk of the import is written to the shards of its users, in a transaction per shard.
+ */
+@Service
+public class UserTransferService {
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    private final Logger log = LoggerFactory.getLogger(UserTransferService.class);
+
+    private final UserRepository userRepository;
+
+    private final SessionStore sessionStore;
+
+    private final ObjectMapper objectMapper;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final TransactionTemplate chunkTransaction;
+
+    private final int chunkSize;
+
+    private final ShardRouter shardRouter;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public UserTransferService(@Qualifier("userRepository") UserRepository userRepository, SessionStore sessionStore,
+                               ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${users.transfer.chunk-size:500}") int chunkSize, ShardRouter shardRouter) {
+        this.userRepository = userRepository;
+        this.sessionStore = sessionStore;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Writes all users ordered by id (by shard and then by id with sharding). Does not close
+     * the given stream.
+     */
+    public long exportUsers(Format format, OutputStream out) {
+        try {
+            return writeUsers(format, out);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Inserts the users of the file and updates the users whose username already exists.
+     * Chunks are committed as they are read, so when a record is rejected the chunks
+     * before it stay imported.
+     *
+     * @param overwriteCredentials whether the password and token of existing users are replaced
+     *     by those of the file, otherwise existing users keep them and only their profile is updated
+     */
+    public UserImportResultDTO importUsers(Format format, InputStream in, boolean overwriteCredentials) {
+        UserImportResultDTO result = new UserImportResultDTO();
+        long start = System.nanoTime();
+        try {
+            Iterator<UserTransferDTO> records = format == Format.CSV ? readCsv(in) : readNdjson(in);
+            List<UserTransferDTO> chunk = new ArrayList<>(chunkSize);
+            while (records.hasNext()) {
+                UserTransferDTO record = records.next();
+                validate(record);
+                chunk.add(record);
+                result.setRows(result.getRows() + 1);
+                if (chunk.size() == chunkSize) {
+                    importChunk(chunk, result, overwriteCredentials);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(chunk, result, overwriteCredentials);
+            }
+        }
+        catch (IOException | UncheckedIOException | IllegalArgumentException | DateTimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format(
+                    "Record %d could not be read, %d users were imported before it: %s",
+                    result.getRows() + 1, result.getInserted() + result.getUpdated(), rootMessage(e)));
+        }
+        result.setMillis((System.nanoTime() - start) / 1_000_000);
+        log.info("Imported {} users ({} inserted, {} updated) in {} ms", result.getRows(), result.getInserted(),
+                result.getUpdated(), result.getMillis());
+        return result;
+    }
+
+    private long writeUsers(Format format, OutputStream out) throws IOException {
+        long[] rows = new long[1];
+        long start = System.nanoTime();
+        ObjectWriter writer = objectMapper.writerFor(UserTransferDTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        Writer csv = format == Format.CSV
+                ? new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)) : null;
+        JsonGenerator ndjson = format == Format.CSV ? null : objectMapper.getFactory().createGenerator(out);
+        if (csv != null) {
+            UserCsv.writeHeader(csv);
+        }
+        else {
+            ndjson.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            ndjson.setRootValueSeparator(null);
+        }
+        shardRouter.forEachShard(shard -> readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<User> users = userRepository.streamAll()) {
+                Iterator<User> iterator = users.iterator();
+                while (iterator.hasNext()) {
+                    User user = iterator.next();
+                    // nothing is kept in the persistence context while the cursor advances
+                    entityManager.detach(user);
+                    UserTransferDTO record = DTOMapper.INSTANCE.convertEntityToUserTransferDTO(user);
+                    if (csv != null) {
+                        UserCsv.writeUser(csv, record);
+                    }
+                    else {
+                        writer.writeValue(ndjson, record);
+                        ndjson.writeRaw('\n');
+                    }
+                    if (++rows[0] % chunkSize == 0) {
+                        log.info("Exported {} users ({} users/s)", rows[0], throughput(rows[0], start));
+                    }
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+        if (csv != null) {
+            csv.flush();
+        }
+        else {
+            ndjson.close();
+        }
+        log.info("Exported {} users in {} ms", rows[0], (System.nanoTime() - start) / 1_000_000);
+        return rows[0];
+    }
+
+    private void importChunk(List<UserTransferDTO> chunk, UserImportResultDTO result, boolean overwriteCredentials) {
+        long start = System.nanoTime();
+        // a username that appears twice in a chunk is written once, the later record wins
+        Map<String, UserTransferDTO> records = new LinkedHashMap<>();
+        for (UserTransferDTO record : chunk) {
+            records.put(record.getUsername(), record);
+        }
+        // inserted, updated
+        int[] counts = new int[2];
+        List<User> written = new ArrayList<>(records.size());
+        try {
+            for (Map.Entry<Integer, Map<String, UserTransferDTO>> shard : byShard(records).entrySet()) {
+                written.addAll(ShardContext.call(shard.getKey(),
+                        () -> chunkTransaction.execute(status -> upsert(shard.getValue(), counts, overwriteCredentials))));
+            }
+        }
+        catch (DataIntegrityViolationException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, String.format(
+                    "The chunk ending at record %d could not be imported, %d users were imported before it: %s",
+                    result.getRows(), result.getInserted() + result.getUpdated(), rootMessage(e)));
+        }
+        for (User user : written) {
+            sessionStore.putSession(user.getToken(), user.getId());
+            sessionStore.putStatus(user.getId(), user.getStatus());
+        }
+        result.setInserted(result.getInserted() + counts[0]);
+        result.setUpdated(result.getUpdated() + counts[1]);
+        result.setChunks(result.getChunks() + 1);
+        log.info("Imported chunk {} ({} users, {} inserted, {} updated, {} users/s), {} users so far",
+                result.getChunks(), chunk.size(), counts[0], counts[1], throughput(chunk.size(), start), result.getRows());
+    }
+
+    /**
+     * Groups the records by the shard of their user: the shard the user is on if it exists,
+     * the home shard of the username otherwise.
+     */
+    private Map<Integer, Map<String, UserTransferDTO>> byShard(Map<String, UserTransferDTO> records) {
+        if (!shardRouter.isSharded()) {
+            return Map.of(0, records);
+        }
+        // users renamed after they registered are not on the home shard of their username
+        Map<String, Integer> shards = new HashMap<>();
+        for (List<User> users : shardRouter.onAllShards(shard -> userRepository.findByUsernameIn(records.keySet()))) {
+            for (User user : users) {
+                shards.put(user.getUsername(), shardRouter.shardOf(user.getId()));
+            }
+        }
+        Map<Integer, Map<String, UserTransferDTO>> byShard = new TreeMap<>();
+        records.forEach((username, record) -> byShard
+                .computeIfAbsent(shards.computeIfAbsent(username, shardRouter::homeShardOf), shard -> new LinkedHashMap<>())
+                .put(username, record));
+        return byShard;
+    }
+
+    private List<User> upsert(Map<String, UserTransferDTO> records, int[] counts, boolean overwriteCredentials) {
+        Map<String, User> existing = userRepository.findByUsernameIn(records.keySet()).stream()
+                .collect(Collectors.toMap(User::getUsername, Function.identity()));
+        List<User> written = new ArrayList<>(records.size());
+        List<UserChangedEvent.State> previous = new ArrayList<>(records.size());
+        for (UserTransferDTO record : records.values()) {
+            User user = existing.get(record.getUsername());
+            previous.add(user == null ? null : UserChangedEvent.State.of(user));
+            if (user == null) {
+                // fields missing in the file get the values createUser would give them
+                user = DTOMapper.INSTANCE.convertUserTransferDTOtoEntity(record);
+                user.setToken(record.getToken() == null ? UUID.randomUUID().toString() : record.getToken());
+                user.setStatus(record.getStatus() == null ? UserStatus.OFFLINE : record.getStatus());
+                user.setCreation_date(record.getCreation_date() == null ? new Date() : record.getCreation_date());
+                counts[0]++;
+            }
+            else {
+                // fields missing in the file keep their current value
+                if (overwriteCredentials) {
+                    user.setPassword(record.getPassword());
+                    if (record.getToken() != null) {
+                        user.setToken(record.getToken());
+                    }
+                }
+                if (record.getStatus() != null) {
+                    user.setStatus(record.getStatus());
+                }
+                if (record.getCreation_date() != null) {
+                    user.setCreation_date(record.getCreation_date());
+                }
+                if (record.getBirthday() != null) {
+                    user.setBirthday(record.getBirthday());
+                }
+                counts[1]++;
+            }
+            written.add(user);
+        }
+        // inserts and updates go out as JDBC batches, see hibernate.jdbc.batch_size
+        written = userRepository.saveAll(written);
+        entityManager.flush();
+        entityManager.clear();
+        // applied by the listeners when the chunk commits, like the changes of UserService
+        for (int i = 0; i < written.size(); i++) {
+            User user = written.get(i);
+            eventPublisher.publishEvent(previous.get(i) == null
+                    ? UserChangedEvent.created(user) : UserChangedEvent.changed(previous.get(i), user));
+        }
+        return written;
+    }
+
+    private void validate(UserTransferDTO record) {
+        if (record.getUsername() == null || record.getPassword() == null) {
+            throw new IllegalArgumentException("username and password are required");
+        }
+    }
+
+    private Iterator<UserTransferDTO> readNdjson(InputStream in) throws IOException {
+        MappingIterator<UserTransferDTO> records = objectMapper.readerFor(UserTransferDTO.class).readValues(in);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return records.hasNextValue();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public UserTransferDTO next() {
+                try {
+                    return records.nextValue();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private Iterator<UserTransferDTO> readCsv(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> header = UserCsv.readRow(reader);
+        if (!UserCsv.HEADER.equals(header)) {
+            throw new IllegalArgumentException("the header must be " + String.join(",", UserCsv.HEADER));
+        }
+        return new Iterator<>() {
+            private List<String> next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = readNext();
+                }
+                return next != null;
+            }
+
+            @Override
+            public UserTransferDTO next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<String> row = next;
+                next = null;
+                return UserCsv.toUser(row);
+            }
+
+            private List<String> readNext() {
+                try {
+                    List<String> row = UserCsv.readRow(reader);
+                    // skip blank lines, e.g. a trailing line break
+                    while (row != null && row.size() == 1 && row.get(0).isEmpty()) {
+                        row = UserCsv.readRow(reader);
+                    }
+                    return row;
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private static long throughput(long rows, long startNanos) {
+        long nanos = Math.max(1, System.nanoTime() - startNanos);
+        return rows * 1_000_000_000L / nanos;
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof JsonProcessingException) {
+            return ((JsonProcessingException) cause).getOriginalMessage();
+        }
+        return cause.getMessage();
+    }
+}
@@ -0,0 +1,133 @@
+package ch.uzh.ifi.hase.soprafs23.session;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SessionStore shared by all instances through Hazelcast maps.
+ * Writes are collected for a short interval and sent as one putAll per map instead of one
+ * remote call per login. Until then they are answered from the pending writes, so an instance
+ * always sees its own writes. Reads of entries written by other instances go through the near
+ * cache that is configured for both maps in HazelcastSessionStoreConfiguration.
+ */
+public class HazelcastSessionStore implements SessionStore, AutoCloseable {
+
+    static final String SESSIONS_MAP = "sessions";
+
+    static final String PRESENCE_MAP = "presence";
+
+    private final Logger log = LoggerFactory.getLogger(HazelcastSessionStore.class);
+
+    private final IMap<String, Long> sessions;
+
+    private final IMap<Long, UserStatus> presence;
+
+    private final Map<String, Long> pendingSessions = new ConcurrentHashMap<>();
+
+    private final Map<Long, UserStatus> pendingPresence = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flusher;
+
+    public HazelcastSessionStore(HazelcastInstance hazelcastInstance, long writeBatchMillis) {
+        this.sessions = hazelcastInstance.getMap(SESSIONS_MAP);
+        this.presence = hazelcastInstance.getMap(PRESENCE_MAP);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-store-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, writeBatchMillis, writeBatchMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void putSession(String token, long userId) {
+        pendingSessions.put(token, userId);
+    }
+
+    @Override
+    public Long findUserId(String token) {
+        Long pending = pendingSessions.get(token);
+        return pending != null ? pending : sessions.get(token);
+    }
+
+    @Override
+    public void putStatus(long userId, UserStatus status) {
+        pendingPresence.put(userId, status);
+    }
+
+    @Override
+    public UserStatus findStatus(long userId) {
+        UserStatus pending = pendingPresence.get(userId);
+        return pending != null ? pending : presence.get(userId);
+    }
+
+    // one getAll instead of a remote call per user
+    @Override
+    public void findStatuses(long[] userIds, int length, UserStatus[] statuses) {
+        Set<Long> remote = new HashSet<>();
+        for (int i = 0; i < length; i++) {
+            statuses[i] = pendingPresence.get(userIds[i]);
+            if (statuses[i] == null) {
+                remote.add(userIds[i]);
+            }
+        }
+        if (remote.isEmpty()) {
+            return;
+        }
+        Map<Long, UserStatus> known = presence.getAll(remote);
+        for (int i = 0; i < length; i++) {
+            if (statuses[i] == null) {
+                statuses[i] = known.get(userIds[i]);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        Map<String, Long> sessionBatch = new HashMap<>(pendingSessions);
+        Map<Long, UserStatus> presenceBatch = new HashMap<>(pendingPresence);
+        if (!sessionBatch.isEmpty()) {
+            sessions.putAll(sessionBatch);
+            removeWritten(pendingSessions, sessionBatch);
+        }
+        if (!presenceBatch.isEmpty()) {
+            presence.putAll(presenceBatch);
+            removeWritten(pendingPresence, presenceBatch);
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        }
+        catch (RuntimeException e) {
+            log.warn("Could not write the pending sessions to Hazelcast, retrying with the next batch", e);
+        }
+    }
+
+    /**
+     * Removes the written entries from the pending writes. An entry that has been overwritten
+     * in the meantime stays pending and goes out with the next batch.
+     */
+    private static <K, V> void removeWritten(Map<K, V> pending, Map<K, V> batch) {
+        batch.forEach((key, value) -> pending.remove(key, value));
+    }
+}
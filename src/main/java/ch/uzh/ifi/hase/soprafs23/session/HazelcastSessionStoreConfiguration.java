@@ -0,0 +1,63 @@
+package ch.uzh.ifi.hase.soprafs23.session;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.core.HazelcastInstance;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Runs an embedded Hazelcast member in every instance when sessions.store=hazelcast.
+ * Spring Boot creates the HazelcastInstance from the Config bean below. The members find
+ * each other over TCP/IP with the addresses in sessions.hazelcast.members.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sessions.store", havingValue = "hazelcast")
+public class HazelcastSessionStoreConfiguration {
+
+    @Bean
+    public Config hazelcastConfig(@Value("${sessions.hazelcast.cluster-name:soprafs23}") String clusterName,
+                                  @Value("${sessions.hazelcast.port:5701}") int port,
+                                  @Value("${sessions.hazelcast.members:127.0.0.1}") List<String> members) {
+        return createConfig(clusterName, port, members);
+    }
+
+    @Bean(destroyMethod = "close")
+    public HazelcastSessionStore hazelcastSessionStore(HazelcastInstance hazelcastInstance,
+                                                       @Value("${sessions.write-batch-millis:50}") long writeBatchMillis) {
+        return new HazelcastSessionStore(hazelcastInstance, writeBatchMillis);
+    }
+
+    static Config createConfig(String clusterName, int port, List<String> members) {
+        Config config = new Config();
+        config.setClusterName(clusterName);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        // send near cache invalidations right away instead of collecting them for up to 10 seconds
+        config.setProperty("hazelcast.map.invalidation.batch.enabled", "false");
+
+        config.getNetworkConfig().setPort(port).setPortAutoIncrement(true);
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).setMembers(members);
+
+        // sessions and presence are read far more often than written, every member keeps
+        // a local copy of the entries it has read, invalidated when another member changes them
+        for (String map : List.of(HazelcastSessionStore.SESSIONS_MAP, HazelcastSessionStore.PRESENCE_MAP)) {
+            config.addMapConfig(new MapConfig(map)
+                    .setBackupCount(1)
+                    .setNearCacheConfig(new NearCacheConfig(map)
+                            .setInMemoryFormat(InMemoryFormat.OBJECT)
+                            .setInvalidateOnChange(true)
+                            .setCacheLocalEntries(true)));
+        }
+        return config;
+    }
+}
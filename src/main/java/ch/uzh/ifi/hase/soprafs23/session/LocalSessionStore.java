@@ -0,0 +1,40 @@
+package ch.uzh.ifi.hase.soprafs23.session;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process SessionStore, the default for a single instance.
+ */
+@Component
+@ConditionalOnProperty(name = "sessions.store", havingValue = "local", matchIfMissing = true)
+public class LocalSessionStore implements SessionStore {
+
+    private final Map<String, Long> sessions = new ConcurrentHashMap<>();
+
+    private final Map<Long, UserStatus> presence = new ConcurrentHashMap<>();
+
+    @Override
+    public void putSession(String token, long userId) {
+        sessions.put(token, userId);
+    }
+
+    @Override
+    public Long findUserId(String token) {
+        return sessions.get(token);
+    }
+
+    @Override
+    public void putStatus(long userId, UserStatus status) {
+        presence.put(userId, status);
+    }
+
+    @Override
+    public UserStatus findStatus(long userId) {
+        return presence.get(userId);
+    }
+}
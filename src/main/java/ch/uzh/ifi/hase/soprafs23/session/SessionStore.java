@@ -0,0 +1,45 @@
+package ch.uzh.ifi.hase.soprafs23.session;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+
+/**
+ * Session Store
+ * Keeps the session tokens and the presence (login status) of users in a place that every
+ * instance of the server can see. The backend is chosen with the sessions.store property:
+ * - local (default) -> LocalSessionStore, only valid within one instance
+ * - hazelcast -> HazelcastSessionStore, shared by all instances of the cluster
+ */
+public interface SessionStore {
+
+    void putSession(String token, long userId);
+
+    /**
+     * @return the id of the user the token belongs to, or null if the token is unknown
+     */
+    Long findUserId(String token);
+
+    void putStatus(long userId, UserStatus status);
+
+    /**
+     * @return the last known status of the user, or null if nothing is known about the user
+     */
+    UserStatus findStatus(long userId);
+
+    /**
+     * Looks up the status of several users at once, for listings.
+     *
+     * @param statuses receives the status of userIds[i] at index i, null if nothing is known about the user
+     */
+    default void findStatuses(long[] userIds, int length, UserStatus[] statuses) {
+        for (int i = 0; i < length; i++) {
+            statuses[i] = findStatus(userIds[i]);
+        }
+    }
+
+    /**
+     * Makes all writes of this instance visible to the other instances. Stores that write
+     * through immediately do not need to do anything.
+     */
+    default void flush() {
+    }
+}
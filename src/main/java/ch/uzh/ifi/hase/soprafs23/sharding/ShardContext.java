@@ -0,0 +1,53 @@
+package ch.uzh.ifi.hase.soprafs23.sharding;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard the current thread works on. The routing data source hands out connections to
+ * this shard and new users get ids of this shard, so it has to be set before a transaction
+ * begins and stay unchanged until it ends. Threads that set no shard work on shard 0, which
+ * is also the only shard when sharding is off.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> SHARD = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static int current() {
+        Integer shard = SHARD.get();
+        return shard == null ? 0 : shard;
+    }
+
+    /**
+     * Runs the work on the given shard and restores the shard of the thread afterwards.
+     */
+    public static <T> T call(int shard, Supplier<T> work) {
+        Integer previous = enter(shard);
+        try {
+            return work.get();
+        }
+        finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * @return the shard set before, to be given to {@link #restore(Integer)}
+     */
+    static Integer enter(int shard) {
+        Integer previous = SHARD.get();
+        SHARD.set(shard);
+        return previous;
+    }
+
+    static void restore(Integer previous) {
+        if (previous == null) {
+            SHARD.remove();
+        }
+        else {
+            SHARD.set(previous);
+        }
+    }
+}
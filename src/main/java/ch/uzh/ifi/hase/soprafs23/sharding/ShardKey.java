@@ -0,0 +1,17 @@
+package ch.uzh.ifi.hase.soprafs23.sharding;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the parameter of a service method that decides the shard the method runs on: a
+ * user id, a username or a User (its id, or its username if it has none yet).
+ *
+ * @see ShardRoutingAspect
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ShardKey {
+}
@@ -0,0 +1,275 @@
+package ch.uzh.ifi.hase.soprafs23.sharding;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.entity.UsernameRoute;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.repository.UsernameRouteRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Decides which shard a user lives on when users.sharding.enabled is set (see
+ * ShardingConfiguration). A new user goes to the home shard of its username, a stable hash
+ * of the username, and gets an id that ends in its shard number (id % shards, see
+ * ShardedIdGenerator). Lookups by id therefore go straight to one shard. A renamed user stays
+ * on its shard, since its id tells the shard, and the home shard of the new username keeps a
+ * {@link UsernameRoute} to it. Lookups by username therefore only ask the home shard of the
+ * username, for the user or its route. The number of shards must not change once users are
+ * stored.
+ * Reads over all users are sent to all shards in parallel. Without sharding there is a
+ * single shard 0 and every method runs its work right away.
+ */
+@Component
+public class ShardRouter {
+
+    private final UserRepository userRepository;
+
+    private final UsernameRouteRepository usernameRouteRepository;
+
+    // transactions of their own on one shard, also when the caller is in a transaction on another
+    private final TransactionTemplate shardTransaction;
+
+    private final int shards;
+
+    // null without sharding
+    private final ExecutorService scatter;
+
+    public ShardRouter(@Qualifier("userRepository") UserRepository userRepository,
+                       UsernameRouteRepository usernameRouteRepository, PlatformTransactionManager transactionManager,
+                       @Value("${users.sharding.enabled:false}") boolean enabled,
+                       @Value("${users.sharding.urls:}") String[] urls) {
+        this.userRepository = userRepository;
+        this.usernameRouteRepository = usernameRouteRepository;
+        this.shardTransaction = new TransactionTemplate(transactionManager);
+        this.shardTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.shards = enabled ? urls.length : 1;
+        if (shards > 1) {
+            AtomicInteger threads = new AtomicInteger();
+            this.scatter = Executors.newFixedThreadPool(shards, work -> {
+                Thread thread = new Thread(work, "shard-scatter-" + threads.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        else {
+            this.scatter = null;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scatter != null) {
+            scatter.shutdownNow();
+        }
+    }
+
+    public boolean isSharded() {
+        return shards > 1;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public int shardOf(long id) {
+        return (int) Math.floorMod(id, (long) shards);
+    }
+
+    /**
+     * @return the shard a user with this username is registered on
+     */
+    public int homeShardOf(String username) {
+        CRC32 hash = new CRC32();
+        hash.update(username.getBytes(StandardCharsets.UTF_8));
+        return (int) (hash.getValue() % shards);
+    }
+
+    /**
+     * @return the shard of the user with this username, its home shard if there is none
+     */
+    public int locate(String username) {
+        if (shards == 1) {
+            return 0;
+        }
+        Long id = findUserId(username);
+        return id == null ? homeShardOf(username) : shardOf(id);
+    }
+
+    /**
+     * Looks up a username on its home shard only, where either the user or its route is
+     * stored. May be called inside a transaction.
+     *
+     * @return the id of the user with this username, null if there is none
+     */
+    public Long findUserId(String username) {
+        return onShard(homeShardOf(username), () -> shardTransaction.execute(status -> {
+            User user = userRepository.findByUsername(username);
+            if (user != null) {
+                return user.getId();
+            }
+            return usernameRouteRepository.findById(username).map(UsernameRoute::getUserId).orElse(null);
+        }));
+    }
+
+    /**
+     * Whether a user of another shard was renamed to this username. For the uniqueness check of
+     * a registration, which runs on the home shard of the username, in its transaction.
+     */
+    public boolean isRouted(String username) {
+        return shards > 1 && usernameRouteRepository.existsById(username);
+    }
+
+    /**
+     * Claims the new username of a user that is being renamed, on the home shard of the
+     * username only. Must be called in the transaction of the rename: a route on the home
+     * shard of the new username is written right away, so that a concurrent rename to the same
+     * username fails, and is removed again if the rename rolls back. The route of the old
+     * username is removed once the rename commits. A registration of the username at the same
+     * moment is not excluded, the two are checked on different tables.
+     *
+     * @return false if the username is taken by another user
+     */
+    public boolean rename(long id, String oldUsername, String newUsername) {
+        if (shards == 1) {
+            // the unique username index of the single USER table checks the rename
+            return true;
+        }
+        int shard = shardOf(id);
+        int home = homeShardOf(newUsername);
+        Boolean claimed;
+        try {
+            claimed = onShard(home, () -> shardTransaction.execute(status -> {
+                User user = userRepository.findByUsername(newUsername);
+                if (user != null) {
+                    return user.getId() == id;
+                }
+                UsernameRoute route = usernameRouteRepository.findById(newUsername).orElse(null);
+                if (route != null) {
+                    return route.getUserId() == id;
+                }
+                if (home != shard) {
+                    usernameRouteRepository.saveAndFlush(new UsernameRoute(newUsername, id));
+                }
+                return true;
+            }));
+        }
+        catch (DataIntegrityViolationException e) {
+            // the route was written by a concurrent rename to the same username
+            return false;
+        }
+        if (!Boolean.TRUE.equals(claimed)) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                String stale = status == STATUS_COMMITTED ? oldUsername : newUsername;
+                if (homeShardOf(stale) != shard) {
+                    removeRoute(stale, id);
+                }
+            }
+        });
+        return true;
+    }
+
+    private void removeRoute(String username, long id) {
+        onShard(homeShardOf(username), () -> shardTransaction.execute(status -> {
+            usernameRouteRepository.findById(username)
+                    .filter(route -> route.getUserId() == id)
+                    .ifPresent(usernameRouteRepository::delete);
+            return null;
+        }));
+    }
+
+    /**
+     * Runs the work on one shard. Inside a transaction it runs on a thread of its own, since the
+     * transaction of the caller holds a connection to its shard.
+     */
+    public <T> T onShard(int shard, Supplier<T> work) {
+        if (scatter == null || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return ShardContext.call(shard, work);
+        }
+        Future<T> future = scatter.submit(() -> ShardContext.call(shard, work));
+        return await(List.of(future)).get(0);
+    }
+
+    /**
+     * Runs the work on every shard in parallel, each on a thread of its own that starts its
+     * own transactions, so it may be called inside a transaction.
+     *
+     * @return the results, in the order of the shards
+     */
+    public <T> List<T> onAllShards(IntFunction<T> work) {
+        if (scatter == null) {
+            List<T> results = new ArrayList<>(1);
+            results.add(ShardContext.call(0, () -> work.apply(0)));
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            int target = shard;
+            futures.add(scatter.submit(() -> ShardContext.call(target, () -> work.apply(target))));
+        }
+        return await(futures);
+    }
+
+    private static <T> List<T> await(List<Future<T>> futures) {
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        }
+        catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the shards", e);
+        }
+        catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Runs the work on one shard after the other on the calling thread, which must not be in
+     * a transaction; for reads that stream all users.
+     */
+    public void forEachShard(IntConsumer work) {
+        for (int shard = 0; shard < shards; shard++) {
+            int target = shard;
+            ShardContext.call(target, () -> {
+                work.accept(target);
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ch.uzh.ifi.hase.soprafs23.sharding;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs service methods with a {@link ShardKey} parameter on the shard of that key. It runs
+ * outside of the transaction interceptor (but inside the tracing), so the transaction of the
+ * method is begun on the right shard. Methods called inside a running transaction stay on
+ * the shard of that transaction.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class ShardRoutingAspect {
+
+    private final ShardRouter shardRouter;
+
+    // position of the @ShardKey parameter by method
+    private final Map<Method, Integer> keyPositions = new ConcurrentHashMap<>();
+
+    public ShardRoutingAspect(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
+    @Around("within(ch.uzh.ifi.hase.soprafs23.service..*) "
+            + "&& execution(* *(.., @ch.uzh.ifi.hase.soprafs23.sharding.ShardKey (*), ..))")
+    public Object route(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!shardRouter.isSharded() || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Integer shard = shardOf(joinPoint.getArgs()[keyPositions.computeIfAbsent(method, ShardRoutingAspect::keyPosition)]);
+        if (shard == null) {
+            // e.g. a login without username, UserService answers it without reading a table
+            return joinPoint.proceed();
+        }
+        Integer previous = ShardContext.enter(shard);
+        try {
+            return joinPoint.proceed();
+        }
+        finally {
+            ShardContext.restore(previous);
+        }
+    }
+
+    private Integer shardOf(Object key) {
+        if (key instanceof User) {
+            User user = (User) key;
+            key = user.getId() != null ? user.getId() : user.getUsername();
+        }
+        if (key instanceof Number) {
+            return shardRouter.shardOf(((Number) key).longValue());
+        }
+        if (key instanceof String) {
+            return shardRouter.locate((String) key);
+        }
+        if (key == null) {
+            return null;
+        }
+        throw new IllegalArgumentException("no shard key: " + key.getClass().getName());
+    }
+
+    private static int keyPosition(Method method) {
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof ShardKey) {
+                    return i;
+                }
+            }
+        }
+        throw new IllegalStateException(method + " has no @ShardKey parameter");
+    }
+}
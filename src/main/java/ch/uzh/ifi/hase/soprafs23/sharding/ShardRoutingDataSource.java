@@ -0,0 +1,30 @@
+package ch.uzh.ifi.hase.soprafs23.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Hands out connections of the shard of the current thread, see {@link ShardContext}.
+ * Connections taken without a shard (e.g. by Hibernate while it starts) are of shard 0.
+ */
+class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private final List<HikariDataSource> shards;
+
+    ShardRoutingDataSource(List<HikariDataSource> shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,55 @@
+package ch.uzh.ifi.hase.soprafs23.sharding;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.hibernate.tool.hbm2ddl.SchemaUpdate;
+import org.hibernate.tool.hbm2ddl.SchemaValidator;
+import org.hibernate.tool.schema.Action;
+import org.hibernate.tool.schema.TargetType;
+
+import java.util.EnumSet;
+
+/**
+ * Hibernate generates the schema (spring.jpa.hibernate.ddl-auto) through a connection of
+ * shard 0 only. This applies the same schema action to the other shards while the session
+ * factory is built, from the same mapping.
+ */
+class ShardSchemaIntegrator implements Integrator {
+
+    private final int shards;
+
+    ShardSchemaIntegrator(int shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry) {
+        Action action = Action.interpretHbm2ddlSetting(serviceRegistry.getService(ConfigurationService.class)
+                .getSettings().get(AvailableSettings.HBM2DDL_AUTO));
+        EnumSet<TargetType> database = EnumSet.of(TargetType.DATABASE);
+        for (int shard = 1; shard < shards; shard++) {
+            ShardContext.call(shard, () -> {
+                switch (action) {
+                    case CREATE_ONLY -> new SchemaExport().setHaltOnError(true).createOnly(database, metadata);
+                    case CREATE, CREATE_DROP -> new SchemaExport().setHaltOnError(true).create(database, metadata);
+                    case UPDATE -> new SchemaUpdate().setHaltOnError(true).execute(database, metadata);
+                    case VALIDATE -> new SchemaValidator().validate(metadata);
+                    default -> {
+                        // the schema of the shards is managed outside of the application
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
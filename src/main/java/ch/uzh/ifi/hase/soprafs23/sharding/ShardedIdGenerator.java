@@ -0,0 +1,42 @@
+package ch.uzh.ifi.hase.soprafs23.sharding;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * User ids that name their shard: every shard counts its own hibernate_sequence and the id
+ * is value * shards + shard, so id % shards is the shard of the user and the ids of
+ * different shards never collide (which the second-level cache, keyed by id, relies on).
+ * With a single shard the ids are the plain sequence values.
+ */
+public class ShardedIdGenerator extends SequenceStyleGenerator {
+
+    /**
+     * Hibernate setting with the number of shards, set by ShardingConfiguration.
+     */
+    public static final String SHARDS = "soprafs23.users.shards";
+
+    private int shards;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, params, serviceRegistry);
+        shards = ConfigurationHelper.getInt(SHARDS,
+                serviceRegistry.getService(ConfigurationService.class).getSettings(), 1);
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        // the sequence is read through the connection of the session, which is on the current shard
+        long value = ((Number) super.generate(session, object)).longValue();
+        return value * shards + ShardContext.current();
+    }
+}
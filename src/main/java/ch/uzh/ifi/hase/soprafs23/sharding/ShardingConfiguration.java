@@ -0,0 +1,67 @@
+package ch.uzh.ifi.hase.soprafs23.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spreads the USER table over the databases in users.sharding.urls when
+ * users.sharding.enabled=true, see ShardRouter. The data source is then a
+ * {@link ShardRoutingDataSource} over one connection pool per shard (configured like
+ * spring.datasource otherwise), which replaces the single data source of Spring Boot, and
+ * Hibernate is told the number of shards for the ids and creates the schema on every shard.
+ * <p>
+ * The entity manager of a request (spring.jpa.open-in-view) would keep the connection of its
+ * first transaction until the request ends, so that a later transaction of the request on
+ * another shard would still use it. Connections are therefore given back after every
+ * transaction.
+ */
+@Configuration
+@ConditionalOnProperty(name = "users.sharding.enabled", havingValue = "true")
+public class ShardingConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public DataSource dataSource(DataSourceProperties properties,
+                                             @Value("${users.sharding.urls}") List<String> urls) {
+        List<HikariDataSource> shards = new ArrayList<>(urls.size());
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < urls.size(); shard++) {
+            HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(urls.get(shard))
+                    .build();
+            dataSource.setPoolName("shard-" + shard);
+            shards.add(dataSource);
+            targets.put(shard, dataSource);
+        }
+        ShardRoutingDataSource dataSource = new ShardRoutingDataSource(shards);
+        dataSource.setTargetDataSources(targets);
+        dataSource.setDefaultTargetDataSource(shards.get(0));
+        return dataSource;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer shardingHibernateProperties(@Value("${users.sharding.urls}") List<String> urls) {
+        return properties -> {
+            properties.put(ShardedIdGenerator.SHARDS, urls.size());
+            properties.put(AvailableSettings.CONNECTION_HANDLING,
+                    PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+            properties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER,
+                    (IntegratorProvider) () -> List.of(new ShardSchemaIntegrator(urls.size())));
+        };
+    }
+}
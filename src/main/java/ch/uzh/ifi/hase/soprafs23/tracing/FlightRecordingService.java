@@ -0,0 +1,104 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Starts and stops an in-process Java Flight Recorder recording, so production can be
+ * profiled without an agent or JVM flags. At most one recording runs at a time. Besides
+ * the JVM events of the chosen settings ("default" or "profile") it records the request,
+ * service, repository and commit events of this package that take at least
+ * tracing.jfr.threshold-millis.
+ */
+@Service
+public class FlightRecordingService {
+
+    private static final List<Class<? extends jdk.jfr.Event>> EVENTS = List.of(
+            RequestEvent.class, ServiceEvent.class, RepositoryEvent.class, TransactionCommitEvent.class);
+
+    private final Logger log = LoggerFactory.getLogger(FlightRecordingService.class);
+
+    private final Duration threshold;
+
+    private Recording recording;
+
+    public FlightRecordingService(@Value("${tracing.jfr.threshold-millis:0}") long thresholdMillis) {
+        this.threshold = Duration.ofMillis(thresholdMillis);
+    }
+
+    public synchronized void start(String settings, Duration maxAge) {
+        if (recording != null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A recording is already running!");
+        }
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings);
+        }
+        catch (IOException | ParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Unknown JFR settings %s, use default or profile", settings));
+        }
+        Recording newRecording = new Recording(configuration);
+        newRecording.setName("soprafs23");
+        // the recording is kept on disk, its size in memory does not grow with the duration
+        newRecording.setToDisk(true);
+        if (maxAge != null) {
+            newRecording.setMaxAge(maxAge);
+        }
+        for (Class<? extends jdk.jfr.Event> event : EVENTS) {
+            newRecording.enable(event).withThreshold(threshold);
+        }
+        newRecording.start();
+        recording = newRecording;
+        log.info("Started JFR recording with settings {}", settings);
+    }
+
+    /**
+     * Stops the running recording and dumps it into a temporary file, which the caller deletes.
+     */
+    public synchronized Path stop() {
+        if (recording == null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "No recording is running!");
+        }
+        try {
+            recording.stop();
+            Path file = Files.createTempFile("soprafs23-", ".jfr");
+            recording.dump(file);
+            log.info("Stopped JFR recording, dumped {} bytes to {}", Files.size(file), file);
+            return file;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    public synchronized boolean isRecording() {
+        return recording != null;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+}
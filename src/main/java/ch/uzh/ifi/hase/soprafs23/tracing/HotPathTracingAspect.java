@@ -0,0 +1,82 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Emits a {@link ServiceEvent} around every service method and a {@link RepositoryEvent}
+ * around every UserRepository method. It runs outside of the transaction interceptor, so
+ * the service event includes the commit, which itself is a {@link TransactionCommitEvent}.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class HotPathTracingAspect {
+
+    @Around("within(ch.uzh.ifi.hase.soprafs23.service..*) && @within(org.springframework.stereotype.Service)")
+    public Object traceService(ProceedingJoinPoint joinPoint) throws Throwable {
+        ServiceEvent event = new ServiceEvent();
+        if (!event.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        return trace(event, AopUtils.getTargetClass(joinPoint.getTarget()).getSimpleName(), joinPoint);
+    }
+
+    @Around("target(ch.uzh.ifi.hase.soprafs23.repository.UserRepository)")
+    public Object traceRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        RepositoryEvent event = new RepositoryEvent();
+        if (!event.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        // the target is the Spring Data proxy, its class name says nothing
+        return trace(event, UserRepository.class.getSimpleName(), joinPoint);
+    }
+
+    private static Object trace(LayerEvent event, String className, ProceedingJoinPoint joinPoint) throws Throwable {
+        event.begin();
+        Object result = null;
+        String outcome = "ok";
+        try {
+            result = joinPoint.proceed();
+            return result;
+        }
+        catch (Throwable e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        }
+        finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.className = className;
+                event.method = joinPoint.getSignature().getName();
+                event.userId = userId(joinPoint.getArgs(), result);
+                event.outcome = outcome;
+                event.commit();
+            }
+        }
+    }
+
+    private static long userId(Object[] args, Object result) {
+        for (Object arg : args) {
+            if (arg instanceof Long) {
+                return (Long) arg;
+            }
+        }
+        if (result instanceof Optional) {
+            result = ((Optional<?>) result).orElse(null);
+        }
+        if (result instanceof User && ((User) result).getId() != null) {
+            return ((User) result).getId();
+        }
+        return 0;
+    }
+}
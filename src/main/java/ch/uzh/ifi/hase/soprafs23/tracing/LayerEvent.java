@@ -0,0 +1,28 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Fields shared by the events around service and repository calls, see {@link HotPathTracingAspect}.
+ */
+@Category({"SoPra", "Users"})
+@StackTrace(false)
+abstract class LayerEvent extends jdk.jfr.Event {
+
+    @Label("Class")
+    String className;
+
+    @Label("Method")
+    String method;
+
+    @Label("User Id")
+    @Description("Id passed to or returned by the call, 0 if there is none")
+    long userId;
+
+    @Label("Outcome")
+    @Description("ok, or the simple name of the thrown exception")
+    String outcome;
+}
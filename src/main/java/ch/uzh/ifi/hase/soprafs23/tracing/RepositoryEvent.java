@@ -0,0 +1,11 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ch.uzh.ifi.hase.soprafs23.Repository")
+@Label("Repository Call")
+@Description("Call of a UserRepository method, served by the database or the second-level cache")
+public class RepositoryEvent extends LayerEvent {
+}
@@ -0,0 +1,37 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Spans the handling of one HTTP request by Spring MVC, including the mapping to and from
+ * DTOs and the serialization of the response. Emitted by {@link RequestTracingInterceptor}.
+ */
+@Name("ch.uzh.ifi.hase.soprafs23.Request")
+@Label("HTTP Request")
+@Description("Handling of an HTTP request, from the controller down to the written response")
+@Category({"SoPra", "Users"})
+@StackTrace(false)
+public class RequestEvent extends jdk.jfr.Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Endpoint")
+    @Description("Matched request mapping, e.g. /users/{id}")
+    String endpoint;
+
+    @Label("User Id")
+    @Description("The {id} path variable, 0 if there is none")
+    long userId;
+
+    @Label("Status")
+    int status;
+
+    @Label("Outcome")
+    @Description("ok, or the simple name of the exception that ended the request")
+    String outcome;
+}
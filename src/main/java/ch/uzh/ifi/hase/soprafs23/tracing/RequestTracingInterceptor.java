@@ -0,0 +1,68 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * Emits a {@link RequestEvent} per handled request. Without a running recording the event is
+ * disabled and nothing but the allocation of the (escape analysed) event object happens.
+ */
+public class RequestTracingInterceptor implements HandlerInterceptor {
+
+    private static final String EVENT_ATTRIBUTE = RequestTracingInterceptor.class.getName() + ".EVENT";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // async requests (e.g. the export) pass here twice, the event spans both dispatches
+        if (request.getAttribute(EVENT_ATTRIBUTE) == null) {
+            RequestEvent event = new RequestEvent();
+            if (event.isEnabled()) {
+                event.begin();
+                request.setAttribute(EVENT_ATTRIBUTE, event);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        RequestEvent event = (RequestEvent) request.getAttribute(EVENT_ATTRIBUTE);
+        if (event == null) {
+            return;
+        }
+        request.removeAttribute(EVENT_ATTRIBUTE);
+        event.end();
+        if (event.shouldCommit()) {
+            event.method = request.getMethod();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            event.endpoint = pattern != null ? pattern.toString() : request.getRequestURI();
+            event.userId = userId(request);
+            event.status = response.getStatus();
+            // exceptions turned into a response by an exception resolver are not passed as ex
+            Object failure = ex != null ? ex : request.getAttribute(DispatcherServlet.EXCEPTION_ATTRIBUTE);
+            event.outcome = failure != null ? failure.getClass().getSimpleName() : "ok";
+            event.commit();
+        }
+    }
+
+    private static long userId(HttpServletRequest request) {
+        Object variables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables instanceof Map) {
+            Object id = ((Map<?, ?>) variables).get("id");
+            if (id != null) {
+                try {
+                    return Long.parseLong(id.toString());
+                }
+                catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
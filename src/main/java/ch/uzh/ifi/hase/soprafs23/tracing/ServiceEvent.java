@@ -0,0 +1,11 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ch.uzh.ifi.hase.soprafs23.Service")
+@Label("Service Call")
+@Description("Call of a service method, including its transaction commit")
+public class ServiceEvent extends LayerEvent {
+}
@@ -0,0 +1,27 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Hooks the JFR events of this package into the transaction handling, the request events
+ * are wired by {@link TracingWebMvcConfigurer}. The events cost next to nothing until a
+ * recording is started, see FlightRecordingService.
+ */
+@Configuration
+public class TracingConfiguration {
+
+    // replaces the JpaTransactionManager of Spring Boot, customized the same way
+    @Bean
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
+                                                         ObjectProvider<TransactionManagerCustomizers> customizers) {
+        TracingJpaTransactionManager transactionManager = new TracingJpaTransactionManager(entityManagerFactory);
+        customizers.ifAvailable(c -> c.customize(transactionManager));
+        return transactionManager;
+    }
+}
@@ -0,0 +1,63 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * JpaTransactionManager that wraps commits and rollbacks into a {@link TransactionCommitEvent}.
+ */
+public class TracingJpaTransactionManager extends JpaTransactionManager {
+
+    public TracingJpaTransactionManager(EntityManagerFactory entityManagerFactory) {
+        super(entityManagerFactory);
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+        TransactionCommitEvent event = new TransactionCommitEvent();
+        if (!event.isEnabled()) {
+            super.doCommit(status);
+            return;
+        }
+        event.begin();
+        String outcome = "committed";
+        try {
+            super.doCommit(status);
+        }
+        catch (RuntimeException e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        }
+        finally {
+            commit(event, outcome);
+        }
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+        TransactionCommitEvent event = new TransactionCommitEvent();
+        if (!event.isEnabled()) {
+            super.doRollback(status);
+            return;
+        }
+        event.begin();
+        try {
+            super.doRollback(status);
+        }
+        finally {
+            commit(event, "rolled back");
+        }
+    }
+
+    private static void commit(TransactionCommitEvent event, String outcome) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.name = TransactionSynchronizationManager.getCurrentTransactionName();
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+// kept apart from TracingConfiguration so that @WebMvcTest slices get the interceptor without JPA
+@Configuration
+public class TracingWebMvcConfigurer implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RequestTracingInterceptor());
+    }
+}
@@ -0,0 +1,27 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Spans the commit or rollback of a JPA transaction. The commit includes the Hibernate
+ * flush, so this is where the SQL of dirty entities shows up. Emitted by
+ * {@link TracingJpaTransactionManager}.
+ */
+@Name("ch.uzh.ifi.hase.soprafs23.TransactionCommit")
+@Label("Transaction Commit")
+@Category({"SoPra", "Users"})
+@StackTrace(false)
+public class TransactionCommitEvent extends jdk.jfr.Event {
+
+    @Label("Transaction")
+    @Description("Name of the transaction, the transactional method by default")
+    String name;
+
+    @Label("Outcome")
+    @Description("committed, rolled back, or the simple name of the exception thrown by the commit")
+    String outcome;
+}
@@ -0,0 +1,60 @@
+package ch.uzh.ifi.hase.soprafs23.admin;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdminTokenFilterTest {
+
+  private final AtomicInteger executed = new AtomicInteger();
+
+  private final FilterChain chain = (request, response) -> executed.incrementAndGet();
+
+  @Test
+  public void doFilter_adminPath_requiresToken() throws Exception {
+    AdminTokenFilter filter = new AdminTokenFilter("secret");
+
+    assertEquals(401, send(filter, request("/admin/users/import", null)).getStatus());
+    assertEquals(401, send(filter, request("/admin/users/import", "guess")).getStatus());
+    assertEquals(0, executed.get());
+
+    assertEquals(200, send(filter, request("/admin/users/import", "secret")).getStatus());
+    assertEquals(1, executed.get());
+  }
+
+  @Test
+  public void doFilter_noTokenConfigured_adminPathsRefused() throws Exception {
+    AdminTokenFilter filter = new AdminTokenFilter("");
+
+    assertEquals(403, send(filter, request("/admin/audit", "")).getStatus());
+    assertEquals(0, executed.get());
+  }
+
+  @Test
+  public void doFilter_otherPaths_passWithoutToken() throws Exception {
+    AdminTokenFilter filter = new AdminTokenFilter("secret");
+
+    assertEquals(200, send(filter, request("/users", null)).getStatus());
+    assertEquals(1, executed.get());
+  }
+
+  private MockHttpServletResponse send(AdminTokenFilter filter, MockHttpServletRequest request) throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, chain);
+    return response;
+  }
+
+  private static MockHttpServletRequest request(String path, String token) {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+    request.setServletPath(path);
+    if (token != null) {
+      request.addHeader(AdminTokenFilter.HEADER, token);
+    }
+    return request;
+  }
+}
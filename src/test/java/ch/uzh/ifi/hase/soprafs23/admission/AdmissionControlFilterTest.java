@@ -0,0 +1,126 @@
+package ch.uzh.ifi.hase.soprafs23.admission;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControlFilterTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private final CountDownLatch entered = new CountDownLatch(4);
+
+  private final AtomicInteger executed = new AtomicInteger();
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  // limit 4, registrations and edits may use 3 slots and the list 2
+  private final AdmissionControlFilter filter = new AdmissionControlFilter(4, 4, 4, 2.0, 0.2, 600, 0.75, 0.5, 2);
+
+  // holds every admitted request until release is counted down
+  private final FilterChain blockingChain = (request, response) -> {
+    executed.incrementAndGet();
+    entered.countDown();
+    try {
+      release.await(10, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  };
+
+  @AfterEach
+  public void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void doFilter_limitReached_lowerClassesShedFirst() throws Exception {
+    // given -> two profile reads and a registration are being processed
+    hold(get("/users/1"));
+    hold(get("/users/2"));
+    hold(request("POST", "/users"));
+
+    // when / then -> the list and a further registration are over the share of their class
+    MockHttpServletResponse list = send(get("/users"));
+    assertEquals(503, list.getStatus());
+    assertEquals("2", list.getHeader("Retry-After"));
+    assertEquals(503, send(request("PUT", "/users/1")).getStatus());
+
+    // a login still gets the last slot, after that everything is rejected
+    hold(request("POST", "/registered"));
+    assertTrue(entered.await(10, TimeUnit.SECONDS));
+    assertEquals(503, send(get("/users/3")).getStatus());
+    assertEquals(4, executed.get());
+    assertEquals(3, filter.getRejected());
+  }
+
+  @Test
+  public void doFilter_completedRequests_slotsReleased() throws Exception {
+    // given
+    release.countDown();
+
+    // when
+    for (int i = 0; i < 10; i++) {
+      assertEquals(200, send(get("/users")).getStatus());
+    }
+
+    // then
+    assertEquals(10, executed.get());
+    assertEquals(0, filter.getRejected());
+  }
+
+  @Test
+  public void doFilter_actuatorAndJfr_notLimited() throws Exception {
+    // given -> all slots are taken
+    for (int i = 0; i < 4; i++) {
+      hold(get("/users/" + i));
+    }
+    assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+    // when / then
+    assertTrue(filter.shouldNotFilter(get("/actuator/metrics")));
+    assertTrue(filter.shouldNotFilter(request("POST", "/admin/jfr/start")));
+    assertFalse(filter.shouldNotFilter(get("/admin/users/export")));
+  }
+
+  private void hold(MockHttpServletRequest request) throws InterruptedException {
+    int before = executed.get();
+    executor.submit(() -> {
+      filter.doFilter(request, new MockHttpServletResponse(), blockingChain);
+      return null;
+    });
+    // wait until the request has been admitted, so the order of the test is deterministic
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (executed.get() == before && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+  }
+
+  private MockHttpServletResponse send(MockHttpServletRequest request) throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, blockingChain);
+    return response;
+  }
+
+  private static MockHttpServletRequest get(String path) {
+    return request("GET", path);
+  }
+
+  private static MockHttpServletRequest request(String method, String path) {
+    MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+    request.setServletPath(path);
+    return request;
+  }
+}
@@ -0,0 +1,75 @@
+package ch.uzh.ifi.hase.soprafs23.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GradientLimitTest {
+
+  private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void onSample_steadyResponseTimesUnderLoad_limitGrows() {
+    // given
+    GradientLimit limit = new GradientLimit(20, 4, 200, 2.0, 0.2, 600);
+
+    // when -> the limit is fully used and the response times do not change
+    for (int i = 0; i < 100; i++) {
+      limit.onSample(PriorityClass.CRITICAL, 5 * MILLI, limit.getLimit());
+    }
+
+    // then
+    assertTrue(limit.getLimit() > 20);
+  }
+
+  @Test
+  public void onSample_littleConcurrency_limitKept() {
+    // given
+    GradientLimit limit = new GradientLimit(20, 4, 200, 2.0, 0.2, 600);
+
+    // when -> a single client, the limit is far from being used
+    for (int i = 0; i < 100; i++) {
+      limit.onSample(PriorityClass.CRITICAL, 5 * MILLI, 1);
+    }
+
+    // then
+    assertEquals(20, limit.getLimit());
+  }
+
+  @Test
+  public void onSample_responseTimesInflate_limitShrinksToMinimum() {
+    // given -> a long history of 5 ms responses
+    GradientLimit limit = new GradientLimit(20, 4, 200, 2.0, 0.2, 600);
+    for (int i = 0; i < 100; i++) {
+      limit.onSample(PriorityClass.CRITICAL, 5 * MILLI, 1);
+    }
+
+    // when -> requests suddenly take ten times as long
+    for (int i = 0; i < 50; i++) {
+      limit.onSample(PriorityClass.CRITICAL, 50 * MILLI, limit.getLimit());
+    }
+
+    // then
+    assertEquals(4, limit.getLimit());
+  }
+
+  @Test
+  public void onSample_slowClassComparedWithItsOwnBaseline() {
+    // given -> profile reads take 5 ms, list requests 100 ms
+    GradientLimit limit = new GradientLimit(20, 4, 200, 2.0, 0.2, 600);
+    for (int i = 0; i < 100; i++) {
+      limit.onSample(PriorityClass.CRITICAL, 5 * MILLI, 1);
+    }
+
+    // when
+    for (int i = 0; i < 50; i++) {
+      limit.onSample(PriorityClass.BULK, 100 * MILLI, limit.getLimit());
+    }
+
+    // then -> the slow list requests are not mistaken for queueing
+    assertTrue(limit.getLimit() >= 20);
+    assertEquals(5.0, limit.getLongRttMillis(PriorityClass.CRITICAL), 0.001);
+  }
+}
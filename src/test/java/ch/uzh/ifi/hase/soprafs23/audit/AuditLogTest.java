@@ -0,0 +1,113 @@
+package ch.uzh.ifi.hase.soprafs23.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditLogTest {
+
+  // room for a few hundred small entries per segment
+  private static final int SEGMENT_BYTES = AuditLog.MIN_SEGMENT_BYTES * 2;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void append_thenRead_sameEventsInOrder() throws IOException {
+    // given
+    try (AuditLog log = new AuditLog(directory, SEGMENT_BYTES, 8)) {
+      // when
+      log.append(AuditEvent.of(AuditEvent.Type.REGISTERED, 1L, "first", ""));
+      log.append(AuditEvent.of(AuditEvent.Type.LOGIN_FAILED, null, "unknown ünicode", "unknown username"));
+      log.append(AuditEvent.of(AuditEvent.Type.PROFILE_CHANGED, 1L, "first", "status ONLINE -> OFFLINE"));
+
+      // then
+      List<AuditEvent> events = log.read(0, 10);
+      assertEquals(3, events.size());
+      assertEquals(List.of(0L, 1L, 2L), events.stream().map(AuditEvent::getSequence).collect(Collectors.toList()));
+      assertEquals(AuditEvent.Type.LOGIN_FAILED, events.get(1).getType());
+      assertEquals(-1, events.get(1).getUserId());
+      assertEquals("unknown ünicode", events.get(1).getUsername());
+      assertEquals("status ONLINE -> OFFLINE", events.get(2).getDetail());
+      assertEquals(1, log.read(1, 1).get(0).getSequence());
+    }
+  }
+
+  @Test
+  public void append_segmentFull_rotatesAndKeepsNewestSegments() throws IOException {
+    // given
+    try (AuditLog log = new AuditLog(directory, SEGMENT_BYTES, 3)) {
+      // when -> far more than three segments hold
+      for (int i = 0; i < 2000; i++) {
+        log.append(AuditEvent.of(AuditEvent.Type.LOGGED_IN, (long) i, "user" + i, ""));
+      }
+
+      // then -> the oldest segments are gone, the rest reads on across the segment borders
+      assertEquals(3, segments().size());
+      List<AuditEvent> events = log.read(0, 5000);
+      long first = events.get(0).getSequence();
+      assertTrue(first > 0);
+      assertEquals(2000 - first, events.size());
+      for (int i = 0; i < events.size(); i++) {
+        assertEquals(first + i, events.get(i).getSequence());
+        assertEquals("user" + (first + i), events.get(i).getUsername());
+      }
+    }
+  }
+
+  @Test
+  public void reopen_tornLastEntry_continuesAfterLastIntactEntry() throws IOException {
+    // given -> a log with three entries whose last entry is damaged
+    try (AuditLog log = new AuditLog(directory, SEGMENT_BYTES, 8)) {
+      for (int i = 0; i < 3; i++) {
+        log.append(AuditEvent.of(AuditEvent.Type.REGISTERED, (long) i, "user" + i, ""));
+      }
+    }
+    Path segment = segments().get(0);
+    long lastEntryUsername = indexOf(segment, "user2");
+    try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      file.write(ByteBuffer.wrap(new byte[] {'X'}), lastEntryUsername);
+    }
+
+    // when
+    try (AuditLog log = new AuditLog(directory, SEGMENT_BYTES, 8)) {
+      log.append(AuditEvent.of(AuditEvent.Type.REGISTERED, 9L, "replacement", ""));
+
+      // then -> the damaged entry is replaced, its sequence number is given out again
+      List<AuditEvent> events = log.read(0, 10);
+      assertEquals(3, events.size());
+      assertEquals("replacement", events.get(2).getUsername());
+      assertEquals(2, events.get(2).getSequence());
+    }
+  }
+
+  @Test
+  public void open_directoryInUse_rejected() throws IOException {
+    try (AuditLog ignored = new AuditLog(directory, SEGMENT_BYTES, 8)) {
+      assertThrows(IllegalStateException.class, () -> new AuditLog(directory, SEGMENT_BYTES, 8));
+    }
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> file.toString().endsWith(".audit")).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static long indexOf(Path file, String text) throws IOException {
+    String content = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+    return content.indexOf(text);
+  }
+}
@@ -0,0 +1,78 @@
+package ch.uzh.ifi.hase.soprafs23.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditRingBufferTest {
+
+  @Test
+  public void offer_full_rejectedUntilDrained() {
+    // given
+    AuditRingBuffer buffer = new AuditRingBuffer(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer(event(i)));
+    }
+
+    // when / then
+    assertFalse(buffer.offer(event(4)));
+    List<AuditEvent> drained = new ArrayList<>();
+    assertEquals(3, buffer.drainTo(drained, 3));
+    assertEquals(1, buffer.size());
+    assertTrue(buffer.offer(event(4)));
+    assertEquals(2, buffer.drainTo(drained, 10));
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i, drained.get(i).getUserId());
+    }
+  }
+
+  @Test
+  public void offer_concurrentProducers_everyEventDrainedOnce() throws Exception {
+    // given
+    AuditRingBuffer buffer = new AuditRingBuffer(64);
+    int producers = 4;
+    int perProducer = 10000;
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    List<Future<?>> futures = new ArrayList<>();
+
+    // when -> the producers retry while the buffer is full
+    for (int p = 0; p < producers; p++) {
+      long offset = (long) p * perProducer;
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < perProducer; i++) {
+          while (!buffer.offer(event(offset + i))) {
+            Thread.yield();
+          }
+        }
+      }));
+    }
+    Set<Long> seen = new HashSet<>();
+    List<AuditEvent> batch = new ArrayList<>();
+    while (seen.size() < producers * perProducer) {
+      buffer.drainTo(batch, 16);
+      for (AuditEvent event : batch) {
+        assertTrue(seen.add(event.getUserId()));
+      }
+      batch.clear();
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    // then
+    assertEquals(0, buffer.size());
+  }
+
+  private static AuditEvent event(long userId) {
+    return AuditEvent.of(AuditEvent.Type.LOGGED_IN, userId, "user", "");
+  }
+}
@@ -0,0 +1,93 @@
+package ch.uzh.ifi.hase.soprafs23.avatar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AvatarStoreTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void store_sameImageTwice_storedOnceUnderItsHash() throws IOException {
+    // given
+    AvatarStore store = new AvatarStore(directory.toString(), 1 << 20, new int[] {64});
+    byte[] image = png(300, 150);
+
+    // when
+    String first = store.store(new ByteArrayInputStream(image));
+    String second = store.store(new ByteArrayInputStream(image));
+
+    // then -> the original and one thumbnail, no upload left behind
+    assertEquals(first, second);
+    assertEquals(64, first.length());
+    assertArrayEquals(image, Files.readAllBytes(store.open(first, null)));
+    assertEquals(2, storedFiles().size());
+  }
+
+  @Test
+  public void open_thumbnail_fitsIntoSizeKeepingAspectRatio() throws IOException {
+    // given
+    AvatarStore store = new AvatarStore(directory.toString(), 1 << 20, new int[] {64});
+    String hash = store.store(new ByteArrayInputStream(png(300, 150)));
+
+    // when
+    BufferedImage thumbnail = ImageIO.read(store.open(hash, 64).toFile());
+
+    // then
+    assertEquals(64, thumbnail.getWidth());
+    assertEquals(32, thumbnail.getHeight());
+    ResponseStatusException unknownSize = assertThrows(ResponseStatusException.class, () -> store.open(hash, 65));
+    assertEquals(HttpStatus.BAD_REQUEST, unknownSize.getStatus());
+  }
+
+  @Test
+  public void store_tooLargeOrNoImage_rejectedAndNothingKept() throws IOException {
+    // given
+    AvatarStore store = new AvatarStore(directory.toString(), 1000, new int[] {64});
+
+    // when
+    ResponseStatusException tooLarge = assertThrows(ResponseStatusException.class,
+        () -> store.store(new ByteArrayInputStream(new byte[1001])));
+    ResponseStatusException noImage = assertThrows(ResponseStatusException.class,
+        () -> store.store(new ByteArrayInputStream("<svg/>".getBytes())));
+
+    // then
+    assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, tooLarge.getStatus());
+    assertEquals(HttpStatus.UNSUPPORTED_MEDIA_TYPE, noImage.getStatus());
+    assertTrue(storedFiles().isEmpty());
+  }
+
+  static byte[] png(int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < width; x++) {
+      for (int y = 0; y < height; y++) {
+        image.setRGB(x, y, x * 7 + y * 13);
+      }
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", out);
+    return out.toByteArray();
+  }
+
+  private List<Path> storedFiles() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      return files.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+  }
+}
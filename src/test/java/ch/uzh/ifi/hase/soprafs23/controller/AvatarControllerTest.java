@@ -0,0 +1,160 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.imageio.ImageIO;
+import javax.persistence.EntityManagerFactory;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Upload and download of avatars through the whole stack, on an own database.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:avatars",
+    "avatars.thumbnail-sizes=64"
+})
+@AutoConfigureMockMvc
+public class AvatarControllerTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  private long id;
+
+  private byte[] image;
+
+  private String etag;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    userRepository.deleteAll();
+    entityManagerFactory.getCache().evictAll();
+    User user = new User();
+    user.setUsername("avatarUser");
+    user.setPassword("password");
+    id = userService.createUser(user).getId();
+
+    image = png(200, 100);
+    etag = mockMvc.perform(put("/users/{id}/avatar", id).contentType(MediaType.IMAGE_PNG).content(image))
+        .andExpect(status().isNoContent())
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    // the cache regions are shared with the contexts of the other tests
+    entityManagerFactory.getCache().evictAll();
+  }
+
+  @Test
+  public void download_wholeAvatar_sameBytesAndHashInProfile() throws Exception {
+    String hash = etag.replace("\"", "");
+
+    mockMvc.perform(get("/users/{id}/avatar", id))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, etag))
+        .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+        .andExpect(content().contentType(MediaType.IMAGE_PNG))
+        .andExpect(content().bytes(image));
+    mockMvc.perform(get("/users/{id}", id))
+        .andExpect(jsonPath("$.avatarHash").value(hash));
+    mockMvc.perform(get("/avatars/{hash}", hash))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable"))
+        .andExpect(content().bytes(image));
+  }
+
+  @Test
+  public void download_matchingETag_notModified() throws Exception {
+    mockMvc.perform(get("/users/{id}/avatar", id).header(HttpHeaders.IF_NONE_MATCH, etag))
+        .andExpect(status().isNotModified())
+        .andExpect(content().bytes(new byte[0]));
+  }
+
+  @Test
+  public void download_byteRanges_partialContent() throws Exception {
+    mockMvc.perform(get("/users/{id}/avatar", id).header(HttpHeaders.RANGE, "bytes=10-19"))
+        .andExpect(status().isPartialContent())
+        .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-19/" + image.length))
+        .andExpect(content().bytes(Arrays.copyOfRange(image, 10, 20)));
+    mockMvc.perform(get("/users/{id}/avatar", id).header(HttpHeaders.RANGE, "bytes=-5"))
+        .andExpect(status().isPartialContent())
+        .andExpect(content().bytes(Arrays.copyOfRange(image, image.length - 5, image.length)));
+    mockMvc.perform(get("/users/{id}/avatar", id).header(HttpHeaders.RANGE, "bytes=" + image.length + "-"))
+        .andExpect(status().isRequestedRangeNotSatisfiable())
+        .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + image.length));
+    // the avatar changed since the client got its first part
+    mockMvc.perform(get("/users/{id}/avatar", id).header(HttpHeaders.RANGE, "bytes=10-19")
+            .header(HttpHeaders.IF_RANGE, "\"outdated\""))
+        .andExpect(status().isOk())
+        .andExpect(content().bytes(image));
+  }
+
+  @Test
+  public void download_thumbnail_scaledPng() throws Exception {
+    byte[] thumbnail = mockMvc.perform(get("/users/{id}/avatar", id).param("size", "64"))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"" + etag.replace("\"", "") + "-64\""))
+        .andReturn().getResponse().getContentAsByteArray();
+
+    BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(thumbnail));
+    assertEquals(64, decoded.getWidth());
+    assertEquals(32, decoded.getHeight());
+  }
+
+  @Test
+  public void upload_notAnImageOrUnknownUser_rejected() throws Exception {
+    mockMvc.perform(put("/users/{id}/avatar", id).contentType(MediaType.IMAGE_PNG).content("not a png".getBytes()))
+        .andExpect(status().isUnsupportedMediaType());
+    mockMvc.perform(put("/users/{id}/avatar", id + 1000).contentType(MediaType.IMAGE_PNG).content(image))
+        .andExpect(status().isNotFound());
+    mockMvc.perform(get("/users/{id}/avatar", id))
+        .andExpect(content().bytes(image));
+  }
+
+  private static byte[] png(int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < width; x++) {
+      for (int y = 0; y < height; y++) {
+        image.setRGB(x, y, x * 5 + y * 11);
+      }
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", out);
+    return out.toByteArray();
+  }
+}
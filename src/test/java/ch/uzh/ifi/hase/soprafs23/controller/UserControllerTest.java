@@ -2,8 +2,16 @@ package ch.uzh.ifi.hase.soprafs23.controller;
 
 import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPatchDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserStatsGetDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserSummaryList;
+import ch.uzh.ifi.hase.soprafs23.service.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs23.service.UserDirectory;
+import ch.uzh.ifi.hase.soprafs23.service.UserPage;
 import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import ch.uzh.ifi.hase.soprafs23.service.UserStatistics;
+import ch.uzh.ifi.hase.soprafs23.session.LocalSessionStore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
@@ -18,13 +26,18 @@ import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilde
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.contains;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -43,6 +56,12 @@ public class UserControllerTest {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private UserStatistics userStatistics;
+
+    @MockBean
+    private UserDirectory userDirectory;
+
     /**
     * Test for endpoint "/users", GET, status OK (200).
     */
@@ -71,6 +90,36 @@ public class UserControllerTest {
         .andExpect(jsonPath("$[0].status", is(user.getStatus().toString())));
     }
 
+    /**
+    * Test for endpoint "/users?view=summary", GET, status OK (200).
+    */
+    @Test
+    public void givenDirectory_whenGetSummariesByStatus_thenReturnJsonArray() throws Exception {
+    // given
+    User user = new User();
+    user.setId(7L);
+    user.setUsername("Jürg");
+    user.setPassword("Password");
+    user.setStatus(UserStatus.ONLINE);
+    user.setCreation_date(new Date(0));
+
+    UserDirectory directory = new UserDirectory(null, null, null, new LocalSessionStore());
+    directory.onUserChanged(UserChangedEvent.created(user));
+    given(userDirectory.getSummaries("ONLINE")).willReturn(new UserSummaryList(directory, UserStatus.ONLINE));
+
+    // when
+    MockHttpServletRequestBuilder getRequest = get("/users").param("view", "summary").param("status", "ONLINE");
+
+    // then -> only the fields of the directory
+    mockMvc.perform(getRequest).andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].id", is(7)))
+        .andExpect(jsonPath("$[0].username", is("Jürg")))
+        .andExpect(jsonPath("$[0].status", is("ONLINE")))
+        .andExpect(jsonPath("$[0].creation_date", is("1970-01-01T00:00:00.000+00:00")))
+        .andExpect(jsonPath("$[0].password").doesNotExist());
+    }
+
     /**
     * Test for endpoint "/users", POST, status CREATED (201).
     */
@@ -180,6 +229,26 @@ public class UserControllerTest {
                 .andExpect(jsonPath("$.birthday", is(user.getBirthday())));
     }
 
+    /**
+     * Test for endpoint "/users/{id}", GET, status OK (200), with a status change on another instance.
+     */
+    @Test
+    public void getUserProfile_sharedStatus_overridesStatusOfRow() throws Exception {
+        // given -> the user logged out on another instance
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("Username");
+        user.setStatus(UserStatus.ONLINE);
+
+        given(userService.getUserProfile(1L)).willReturn(user);
+        given(userService.getSharedStatus(1L)).willReturn(UserStatus.OFFLINE);
+
+        // validate the result
+        mockMvc.perform(get("/users/{userId}", 1L))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is("OFFLINE")));
+    }
+
     /**
      * Test for endpoint "/users/{id}", GET, status NOT_FOUND (404).
      */
@@ -201,4 +270,158 @@ public class UserControllerTest {
                 .andExpect(status().isNotFound())
                 .andExpect(status().reason(is(errorMessage)));
     }
-}
\ No newline at end of file
+
+    /**
+     * Test for endpoint "/users?ids=...", GET, status OK (200).
+     */
+    @Test
+    public void getUserProfiles_someMissing_keepsRequestOrder() throws Exception {
+        // given
+        User first = new User();
+        first.setId(1L);
+        first.setUsername("first");
+        first.setStatus(UserStatus.ONLINE);
+
+        User third = new User();
+        third.setId(3L);
+        third.setUsername("third");
+        third.setStatus(UserStatus.OFFLINE);
+
+        given(userService.getUserProfiles(Mockito.any())).willReturn(Map.of(1L, first, 3L, third));
+
+        // make the request
+        MockHttpServletRequestBuilder getRequest = get("/users").param("ids", "3,2,1");
+
+        // validate the result
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users", hasSize(2)))
+                .andExpect(jsonPath("$.users[0].username", is(third.getUsername())))
+                .andExpect(jsonPath("$.users[1].username", is(first.getUsername())))
+                .andExpect(jsonPath("$.missingIds", contains(2)));
+    }
+
+    /**
+     * Test for endpoint "/users?status=...&sort=...", GET, status OK (200).
+     */
+    @Test
+    public void getUserPage_morePages_returnsPageAndNextCursor() throws Exception {
+        // given
+        User user = new User();
+        user.setId(4L);
+        user.setUsername("Username");
+        user.setStatus(UserStatus.ONLINE);
+
+        given(userService.getUserPage("ONLINE", "creation_date,desc", null, 50))
+                .willReturn(new UserPage(List.of(user), "next"));
+
+        // make the request
+        MockHttpServletRequestBuilder getRequest = get("/users")
+                .param("status", "ONLINE").param("sort", "creation_date,desc");
+
+        // validate the result
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "next"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].username", is(user.getUsername())));
+        Mockito.verify(userService, Mockito.never()).getUsers();
+    }
+
+    /**
+     * Test for endpoint "/users?limit=...", GET, status BAD_REQUEST (400).
+     */
+    @Test
+    public void getUserPage_limitTooLarge_BAD_REQUEST() throws Exception {
+        // make the request
+        MockHttpServletRequestBuilder getRequest = get("/users").param("limit", "501");
+
+        // validate the result
+        mockMvc.perform(getRequest)
+                .andExpect(status().isBadRequest());
+        Mockito.verify(userService, Mockito.never())
+                .getUserPage(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt());
+    }
+
+    /**
+     * Test for endpoint "/users?ids=...", GET, status BAD_REQUEST (400).
+     */
+    @Test
+    public void getUserProfiles_tooManyIds_BAD_REQUEST() throws Exception {
+        // given
+        StringBuilder ids = new StringBuilder("0");
+        for (int i = 1; i <= 100; i++) {
+            ids.append(',').append(i);
+        }
+
+        // make the request
+        MockHttpServletRequestBuilder getRequest = get("/users").param("ids", ids.toString());
+
+        // validate the result
+        mockMvc.perform(getRequest)
+                .andExpect(status().isBadRequest());
+        Mockito.verify(userService, Mockito.never()).getUserProfiles(Mockito.any());
+    }
+
+    /**
+     * Test for endpoint "/users/stats", GET, status OK (200).
+     */
+    @Test
+    public void getUserStatistics_validDays_thenReturnStatistics() throws Exception {
+        // given
+        UserStatsGetDTO stats = new UserStatsGetDTO();
+        stats.setTotal(3);
+        stats.setOnline(2);
+        stats.setOffline(1);
+        stats.setRegistrationsPerDay(Map.of("2023-03-01", 3L));
+        stats.setBirthdayMonths(Map.of("MARCH", 1L));
+        stats.setUnknownBirthdays(2);
+
+        given(userStatistics.getStatistics(7)).willReturn(stats);
+
+        // make the request
+        MockHttpServletRequestBuilder getRequest = get("/users/stats").param("days", "7");
+
+        // validate the result
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total", is(3)))
+                .andExpect(jsonPath("$.online", is(2)))
+                .andExpect(jsonPath("$.registrationsPerDay['2023-03-01']", is(3)))
+                .andExpect(jsonPath("$.birthdayMonths.MARCH", is(1)))
+                .andExpect(jsonPath("$.unknownBirthdays", is(2)));
+    }
+
+    /**
+     * Test for endpoint "/users/stats", GET, status BAD_REQUEST (400).
+     */
+    @Test
+    public void getUserStatistics_tooManyDays_BAD_REQUEST() throws Exception {
+        // make the request
+        MockHttpServletRequestBuilder getRequest = get("/users/stats").param("days", "367");
+
+        // validate the result
+        mockMvc.perform(getRequest)
+                .andExpect(status().isBadRequest());
+        Mockito.verify(userStatistics, Mockito.never()).getStatistics(Mockito.anyInt());
+    }
+
+    /**
+     * Test for endpoint "/users/{id}", PATCH, status NO_CONTENT (204).
+     */
+    @Test
+    public void patchUser_mergePatch_onlyPresentMembersPassedOn() throws Exception {
+        // make the request
+        MockHttpServletRequestBuilder patchRequest = patch("/users/1")
+                .contentType("application/merge-patch+json")
+                .content("{\"status\":\"OFFLINE\",\"birthday\":null}");
+
+        // validate the result
+        mockMvc.perform(patchRequest)
+                .andExpect(status().isNoContent());
+        Mockito.verify(userService).patchUserProfile(Mockito.argThat((UserPatchDTO patch) ->
+                patch.hasStatus() && "OFFLINE".equals(patch.getStatus())
+                        && patch.hasBirthday() && patch.getBirthday() == null
+                        && !patch.hasUsername()), Mockito.eq(1L));
+    }
+}
@@ -0,0 +1,176 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Statement budget of every user endpoint, counted with the Hibernate statistics. A request
+ * that sends more statements than its budget fails, which catches N+1 queries (e.g. a bulk
+ * read that loads user by user) and lost caching before they reach production.
+ * The budgets are for a cold second-level cache unless a test says otherwise.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:querycounts")
+@AutoConfigureMockMvc
+public class UserEndpointQueryCountTest {
+
+  private static final int USERS = 30;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  private Statistics statistics;
+
+  private final List<Long> ids = new ArrayList<>();
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    entityManagerFactory.getCache().evictAll();
+    for (int i = 0; i < USERS; i++) {
+      User user = new User();
+      user.setUsername("user" + i);
+      user.setPassword("password");
+      ids.add(userService.createUser(user).getId());
+    }
+    entityManagerFactory.getCache().evictAll();
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    // the cache regions are shared with the contexts of the other tests
+    entityManagerFactory.getCache().evictAll();
+  }
+
+  @Test
+  public void register_atMostThreeStatements() throws Exception {
+    // username check, id from the sequence, insert
+    assertStatements(3, post("/users").contentType(MediaType.APPLICATION_JSON)
+        .content("{\"username\": \"newUser\", \"password\": \"password\"}"), status().isCreated());
+  }
+
+  @Test
+  public void register_withoutUsername_rejectedWithoutStatements() throws Exception {
+    assertStatements(0, post("/users").contentType(MediaType.APPLICATION_JSON)
+        .content("{\"password\": \"password\"}"), status().isBadRequest());
+  }
+
+  @Test
+  public void login_withoutUsername_rejectedWithoutStatements() throws Exception {
+    assertStatements(0, post("/registered").contentType(MediaType.APPLICATION_JSON)
+        .content("{\"password\": \"password\"}"), status().isUnauthorized());
+  }
+
+  @Test
+  public void login_atMostTwoStatements() throws Exception {
+    // username to id, user by id; the user is ONLINE already, so nothing is updated
+    assertStatements(2, post("/registered").contentType(MediaType.APPLICATION_JSON)
+        .content("{\"username\": \"user7\", \"password\": \"password\"}"), status().isAccepted());
+  }
+
+  @Test
+  public void getProfile_oneStatementThenCached() throws Exception {
+    assertStatements(1, get("/users/{id}", ids.get(3)), status().isOk());
+    assertStatements(0, get("/users/{id}", ids.get(3)), status().isOk());
+  }
+
+  @Test
+  public void getProfiles_oneStatementForAllIds() throws Exception {
+    StringJoiner idList = new StringJoiner(",");
+    for (int i = 0; i < 20; i++) {
+      idList.add(ids.get(i).toString());
+    }
+
+    // not one query per id
+    assertStatements(1, get("/users").param("ids", idList.toString()), status().isOk());
+  }
+
+  @Test
+  public void getUsers_oneStatementForAllUsersThenCached() throws Exception {
+    assertStatements(1, get("/users"), status().isOk());
+    assertStatements(0, get("/users"), status().isOk());
+  }
+
+  @Test
+  public void getUserSummaries_noStatements() throws Exception {
+    // served from the UserDirectory
+    assertStatements(0, get("/users").param("view", "summary"), status().isOk());
+    assertStatements(0, get("/users").param("view", "summary").param("status", "ONLINE"), status().isOk());
+  }
+
+  @Test
+  public void getUserPage_oneStatementPerPage() throws Exception {
+    // the next page is detected by reading one row more, not by a count query
+    assertStatements(1, get("/users").param("status", "ONLINE").param("sort", "creation_date,desc")
+        .param("limit", "10"), status().isOk());
+  }
+
+  @Test
+  public void putProfile_atMostTwoStatements() throws Exception {
+    // user by id, update
+    assertStatements(2, put("/users/{id}", ids.get(5)).contentType(MediaType.APPLICATION_JSON)
+        .content("{\"birthday\": \"01.01.2000\", \"status\": \"OFFLINE\"}"), status().isNoContent());
+  }
+
+  @Test
+  public void patchStatus_cachedUser_onlyTheUpdate() throws Exception {
+    // given
+    mockMvc.perform(get("/users/{id}", ids.get(6)));
+
+    // then
+    assertStatements(1, patch("/users/{id}", ids.get(6)).contentType("application/merge-patch+json")
+        .content("{\"status\": \"OFFLINE\"}"), status().isNoContent());
+  }
+
+  @Test
+  public void getStatistics_noStatement() throws Exception {
+    // served from the read model
+    assertStatements(0, get("/users/stats"), status().isOk());
+  }
+
+  private void assertStatements(long budget, MockHttpServletRequestBuilder request, ResultMatcher expectedStatus)
+      throws Exception {
+    long before = statistics.getPrepareStatementCount();
+    mockMvc.perform(request).andExpect(expectedStatus);
+    long statements = statistics.getPrepareStatementCount() - before;
+    assertTrue(statements <= budget,
+        String.format("%s %s sent %d statements, its budget is %d", request.buildRequest(null).getMethod(),
+            request.buildRequest(null).getRequestURI(), statements, budget));
+  }
+}
@@ -0,0 +1,243 @@
+package ch.uzh.ifi.hase.soprafs23.idempotency;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.controller.UserController;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.service.UserDirectory;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import ch.uzh.ifi.hase.soprafs23.service.UserStatistics;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Sends requests with Idempotency-Key headers through the filter to the UserController.
+ *
+ * @see IdempotencyFilter
+ */
+@WebMvcTest(UserController.class)
+public class IdempotencyFilterTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private IdempotencyFilter idempotencyFilter;
+
+  @MockBean
+  private UserService userService;
+
+  @MockBean
+  private UserStatistics userStatistics;
+
+  @MockBean
+  private UserDirectory userDirectory;
+
+  @Test
+  public void createUser_replayedKey_storedResponseWithoutService() throws Exception {
+    // given
+    given(userService.createUser(Mockito.any())).willReturn(createdUser());
+    long replays = idempotencyFilter.getReplays();
+    String first = mockMvc.perform(createUser("key-1", "test"))
+        .andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+
+    // when
+    MockHttpServletResponse replayed = mockMvc.perform(createUser("key-1", "test"))
+        .andExpect(status().isCreated())
+        .andExpect(header().string(IdempotencyFilter.REPLAYED_HEADER, "true"))
+        .andReturn().getResponse();
+
+    // then
+    assertEquals(first, replayed.getContentAsString());
+    assertEquals(MediaType.APPLICATION_JSON_VALUE, replayed.getContentType());
+    Mockito.verify(userService, Mockito.times(1)).createUser(Mockito.any());
+    assertEquals(replays + 1, idempotencyFilter.getReplays());
+  }
+
+  @Test
+  public void createUser_withoutKey_executedEveryTime() throws Exception {
+    // given
+    given(userService.createUser(Mockito.any())).willReturn(createdUser());
+
+    // when
+    mockMvc.perform(createUser(null, "test")).andExpect(status().isCreated());
+    mockMvc.perform(createUser(null, "test")).andExpect(status().isCreated());
+
+    // then
+    Mockito.verify(userService, Mockito.times(2)).createUser(Mockito.any());
+  }
+
+  @Test
+  public void createUser_keyReusedWithOtherBody_unprocessableEntity() throws Exception {
+    // given
+    given(userService.createUser(Mockito.any())).willReturn(createdUser());
+    mockMvc.perform(createUser("key-2", "test")).andExpect(status().isCreated());
+
+    // when / then
+    mockMvc.perform(createUser("key-2", "other")).andExpect(status().isUnprocessableEntity());
+    Mockito.verify(userService, Mockito.times(1)).createUser(Mockito.any());
+  }
+
+  @Test
+  public void createUser_conflict_errorReplayed() throws Exception {
+    // given
+    given(userService.createUser(Mockito.any()))
+        .willThrow(new ResponseStatusException(HttpStatus.CONFLICT, "The provided username is not unique."));
+    mockMvc.perform(createUser("key-3", "test")).andExpect(status().isConflict());
+
+    // when
+    MockHttpServletResponse replayed = mockMvc.perform(createUser("key-3", "test"))
+        .andExpect(status().isConflict())
+        .andReturn().getResponse();
+
+    // then
+    assertEquals("The provided username is not unique.", replayed.getErrorMessage());
+    Mockito.verify(userService, Mockito.times(1)).createUser(Mockito.any());
+  }
+
+  @Test
+  public void updateUser_serverError_notStored() throws Exception {
+    // given
+    Mockito.doThrow(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE))
+        .doNothing()
+        .when(userService).updateUserProfile(Mockito.any(), Mockito.anyLong());
+    mockMvc.perform(updateUser("key-4")).andExpect(status().isServiceUnavailable());
+
+    // when / then -> the retry is executed and its result stored
+    mockMvc.perform(updateUser("key-4")).andExpect(status().isNoContent());
+    mockMvc.perform(updateUser("key-4"))
+        .andExpect(status().isNoContent())
+        .andExpect(header().string(IdempotencyFilter.REPLAYED_HEADER, "true"));
+    Mockito.verify(userService, Mockito.times(2)).updateUserProfile(Mockito.any(), Mockito.anyLong());
+  }
+
+  @Test
+  public void createUser_concurrentDuplicates_waitForFirstExecution() throws Exception {
+    // given -> the first execution blocks until both requests have been sent
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    given(userService.createUser(Mockito.any())).willAnswer(invocation -> {
+      started.countDown();
+      assertTrue(release.await(10, TimeUnit.SECONDS));
+      return createdUser();
+    });
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    try {
+      // when
+      Future<MockHttpServletResponse> first = executor.submit(
+          () -> mockMvc.perform(createUser("key-5", "test")).andReturn().getResponse());
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      Future<MockHttpServletResponse> duplicate = executor.submit(
+          () -> mockMvc.perform(createUser("key-5", "test")).andReturn().getResponse());
+      Thread.sleep(100);
+      release.countDown();
+
+      // then
+      assertEquals(HttpStatus.CREATED.value(), first.get(10, TimeUnit.SECONDS).getStatus());
+      MockHttpServletResponse replayed = duplicate.get(10, TimeUnit.SECONDS);
+      assertEquals(HttpStatus.CREATED.value(), replayed.getStatus());
+      assertEquals("true", replayed.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+      Mockito.verify(userService, Mockito.times(1)).createUser(Mockito.any());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void runningExecution_notEvictedByStoredResponses() throws Exception {
+    // given -> a store for one key, and a request that runs while others fill it
+    IdempotencyFilter filter = new IdempotencyFilter(1, 60, 10_000);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger executed = new AtomicInteger();
+    FilterChain blocking = (request, response) -> {
+      executed.incrementAndGet();
+      started.countDown();
+      assertDoesNotThrow(() -> assertTrue(release.await(10, TimeUnit.SECONDS)));
+      ((HttpServletResponse) response).setStatus(HttpStatus.CREATED.value());
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    try {
+      // when
+      Future<MockHttpServletResponse> first = executor.submit(() -> filterCreateUser(filter, "running", blocking));
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      for (int i = 0; i < 100; i++) {
+        filterCreateUser(filter, "done-" + i, (request, response) -> {});
+      }
+      Future<MockHttpServletResponse> duplicate = executor.submit(() -> filterCreateUser(filter, "running", blocking));
+      Thread.sleep(100);
+      release.countDown();
+
+      // then -> the duplicate waited for the first execution instead of running again
+      assertEquals(HttpStatus.CREATED.value(), first.get(10, TimeUnit.SECONDS).getStatus());
+      assertEquals("true", duplicate.get(10, TimeUnit.SECONDS).getHeader(IdempotencyFilter.REPLAYED_HEADER));
+      assertEquals(1, executed.get());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static MockHttpServletResponse filterCreateUser(IdempotencyFilter filter, String key, FilterChain chain)
+      throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/users");
+    request.addHeader(IdempotencyFilter.HEADER, key);
+    request.setContent("{\"username\":\"test\",\"password\":\"password\"}".getBytes(StandardCharsets.UTF_8));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, chain);
+    return response;
+  }
+
+  private static MockHttpServletRequestBuilder createUser(String key, String username) {
+    MockHttpServletRequestBuilder request = post("/users")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"username\":\"" + username + "\",\"password\":\"password\"}");
+    return key == null ? request : request.header(IdempotencyFilter.HEADER, key);
+  }
+
+  private static MockHttpServletRequestBuilder updateUser(String key) {
+    return put("/users/1")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"username\":\"test\",\"birthday\":\"01.01.2000\"}")
+        .header(IdempotencyFilter.HEADER, key);
+  }
+
+  private static User createdUser() {
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("test");
+    user.setToken("1");
+    user.setStatus(UserStatus.ONLINE);
+    return user;
+  }
+}
@@ -0,0 +1,271 @@
+package ch.uzh.ifi.hase.soprafs23.repository;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.Method;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the query plans of all UserRepository queries on a large USER table: every
+ * statement they send must be answered through an index, except for findAll and
+ * findAllOnShard, which read the whole table (of a shard) on purpose. The SQL is captured as Hibernate sends it and run through
+ * EXPLAIN, where H2 marks a full scan with "tableScan".
+ * A query method added to the repository fails this test until it is covered here.
+ *
+ * @see UserRepository
+ */
+@SpringBootTest(properties = {
+    // an own database, the seeded rows would disturb the other tests
+    "spring.datasource.url=jdbc:h2:mem:queryplans",
+    "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "ch.uzh.ifi.hase.soprafs23.repository.UserRepositoryQueryPlanTest$SqlCapture"
+})
+public class UserRepositoryQueryPlanTest {
+
+  private static final int SEEDED_USERS = 20000;
+
+  // ids far above the ones Hibernate hands out
+  private static final long FIRST_SEEDED_ID = 1_000_000;
+
+  // the queries this test covers, by repository method
+  private static final Set<String> COVERED_METHODS = Set.of(
+      "findAll", "findByUsernameIn", "streamAll", "findByUsername", "findAllByIdCacheFirst", "findPage",
+      "findAllOnShard");
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @BeforeEach
+  public void setup() {
+    Integer users = jdbcTemplate.queryForObject("select count(*) from USER", Integer.class);
+    if (users == null || users < SEEDED_USERS) {
+      seed();
+    }
+    entityManagerFactory.getCache().evictAll();
+    SqlCapture.statements.clear();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    // the cache regions are shared with the contexts of the other tests
+    entityManagerFactory.getCache().evictAll();
+  }
+
+  @Test
+  public void everyRepositoryQueryMethod_isCovered() {
+    Set<String> declared = Stream.concat(
+            Arrays.stream(UserRepository.class.getDeclaredMethods()),
+            Arrays.stream(UserRepositoryCustom.class.getDeclaredMethods()))
+        .map(Method::getName)
+        .collect(Collectors.toSet());
+
+    assertEquals(COVERED_METHODS, declared, "Add a plan check for every new query method of UserRepository");
+  }
+
+  @Test
+  public void findByUsername_usesUsernameIndex() {
+    List<String> plans = explain(() -> assertNotNull(userRepository.findByUsername("seeded-4711")));
+
+    assertIndexOnly(plans);
+    assertTrue(plans.stream().anyMatch(plan -> plan.contains("USER_USERNAME_IDX")), plans.toString());
+  }
+
+  @Test
+  public void findByUsernameIn_usesUsernameIndex() {
+    List<String> plans = explain(() ->
+        assertEquals(3, userRepository.findByUsernameIn(List.of("seeded-1", "seeded-2", "seeded-3")).size()));
+
+    assertIndexOnly(plans);
+    assertTrue(plans.get(0).contains("USER_USERNAME_IDX"), plans.get(0));
+  }
+
+  @Test
+  public void findById_usesPrimaryKey() {
+    List<String> plans = explain(() -> assertTrue(userRepository.findById(FIRST_SEEDED_ID + 42).isPresent()));
+
+    assertIndexOnly(plans);
+  }
+
+  @Test
+  public void findAllByIdCacheFirst_usesPrimaryKey() {
+    List<Long> ids = List.of(FIRST_SEEDED_ID + 1, FIRST_SEEDED_ID + 500, FIRST_SEEDED_ID + 19999);
+
+    List<String> plans = explain(() -> assertEquals(3, userRepository.findAllByIdCacheFirst(ids).size()));
+
+    assertEquals(1, plans.size(), "the uncached ids are loaded with a single IN query");
+    assertIndexOnly(plans);
+  }
+
+  @Test
+  public void streamAll_readsInPrimaryKeyOrderWithoutSorting() {
+    List<String> plans = explain(() -> transactionTemplate.executeWithoutResult(status -> {
+      try (Stream<User> users = userRepository.streamAll()) {
+        assertTrue(users.limit(10).count() > 0);
+      }
+    }));
+
+    assertIndexOnly(plans);
+    assertTrue(plans.get(0).contains("index sorted"), plans.get(0));
+  }
+
+  @Test
+  public void findPage_byStatus_readsStatusCreationDateIndexInOrder() {
+    List<String> plans = explain(() ->
+        assertEquals(50, userRepository.findPage(UserStatus.ONLINE, true, null, null, 50).size()));
+
+    assertIndexOnly(plans);
+    assertTrue(plans.get(0).contains("USER_STATUS_CREATION_DATE_IDX"), plans.get(0));
+    assertTrue(plans.get(0).contains("index sorted"), plans.get(0));
+  }
+
+  @Test
+  public void findPage_byStatusAscending_readsAscendingIndexInOrder() {
+    // H2 does not read indexes backwards, so the ascending order has an index of its own
+    List<String> plans = explain(() ->
+        assertEquals(50, userRepository.findPage(UserStatus.ONLINE, false, null, null, 50).size()));
+
+    assertIndexOnly(plans);
+    assertTrue(plans.get(0).contains("USER_STATUS_CREATION_DATE_ASC_IDX"), plans.get(0));
+    assertTrue(plans.get(0).contains("index sorted"), plans.get(0));
+  }
+
+  @Test
+  public void findPage_ascendingAfterCursor_readsIndexRangeInOrder() {
+    User last = userRepository.findPage(UserStatus.ONLINE, false, null, null, 100).get(99);
+
+    List<String> plans = explain(() -> assertEquals(50,
+        userRepository.findPage(UserStatus.ONLINE, false, last.getCreation_date(), last.getId(), 50).size()));
+
+    assertIndexOnly(plans);
+    assertTrue(plans.get(0).contains("USER_STATUS_CREATION_DATE_ASC_IDX"), plans.get(0));
+    assertTrue(plans.get(0).contains("index sorted"), plans.get(0));
+  }
+
+  @Test
+  public void findPage_afterCursor_readsIndexRangeInOrder() {
+    User last = userRepository.findPage(UserStatus.ONLINE, true, null, null, 100).get(99);
+
+    List<String> plans = explain(() -> assertEquals(50,
+        userRepository.findPage(UserStatus.ONLINE, true, last.getCreation_date(), last.getId(), 50).size()));
+
+    assertIndexOnly(plans);
+    assertTrue(plans.get(0).contains("USER_STATUS_CREATION_DATE_IDX"), plans.get(0));
+    assertTrue(plans.get(0).contains("index sorted"), plans.get(0));
+  }
+
+  @Test
+  public void findPage_allStatuses_readsCreationDateIndexInOrder() {
+    List<String> plans = explain(() -> assertEquals(50, userRepository.findPage(null, true, null, null, 50).size()));
+
+    assertIndexOnly(plans);
+    assertTrue(plans.get(0).contains("USER_CREATION_DATE_IDX"), plans.get(0));
+    assertTrue(plans.get(0).contains("index sorted"), plans.get(0));
+  }
+
+  @Test
+  public void findPage_allStatusesAscending_readsAscendingCreationDateIndexInOrder() {
+    List<String> plans = explain(() -> assertEquals(50, userRepository.findPage(null, false, null, null, 50).size()));
+
+    assertIndexOnly(plans);
+    assertTrue(plans.get(0).contains("USER_CREATION_DATE_ASC_IDX"), plans.get(0));
+    assertTrue(plans.get(0).contains("index sorted"), plans.get(0));
+  }
+
+  @Test
+  public void findAll_onlyQueryAllowedToScan() {
+    List<String> plans = explain(() -> assertTrue(userRepository.findAll().size() >= SEEDED_USERS));
+
+    assertEquals(1, plans.size());
+    assertTrue(plans.get(0).contains("tableScan"), plans.get(0));
+  }
+
+  @Test
+  public void findAllOnShard_scansLikeFindAll() {
+    // without sharding every user is on shard 0 of 1
+    List<String> plans = explain(() -> assertTrue(userRepository.findAllOnShard(1, 0).size() >= SEEDED_USERS));
+
+    assertEquals(1, plans.size());
+    assertTrue(plans.get(0).contains("tableScan"), plans.get(0));
+  }
+
+  /**
+   * Runs the repository call and returns the EXPLAIN output of every SELECT it sent.
+   */
+  private List<String> explain(Runnable repositoryCall) {
+    SqlCapture.statements.clear();
+    repositoryCall.run();
+    List<String> plans = new ArrayList<>();
+    for (String sql : SqlCapture.statements) {
+      if (sql.trim().toLowerCase().startsWith("select")) {
+        plans.add(jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class));
+      }
+    }
+    assertFalse(plans.isEmpty(), "the call did not reach the database");
+    return plans;
+  }
+
+  private static void assertIndexOnly(List<String> plans) {
+    for (String plan : plans) {
+      assertFalse(plan.contains("tableScan"), "full table scan: " + plan);
+    }
+  }
+
+  private void seed() {
+    jdbcTemplate.update("delete from USER");
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    List<Object[]> rows = new ArrayList<>(SEEDED_USERS);
+    for (int i = 0; i < SEEDED_USERS; i++) {
+      UserStatus status = i % 3 == 0 ? UserStatus.OFFLINE : UserStatus.ONLINE;
+      rows.add(new Object[] {FIRST_SEEDED_ID + i, "seeded-" + i, UUID.randomUUID().toString(), status.ordinal(),
+          "password", now});
+    }
+    jdbcTemplate.batchUpdate(
+        "insert into USER (id, username, token, status, password, creation_date) values (?, ?, ?, ?, ?, ?)", rows);
+    jdbcTemplate.execute("analyze");
+  }
+
+  /**
+   * Remembers every statement Hibernate prepares, registered through hibernate.session_factory.statement_inspector.
+   */
+  public static class SqlCapture implements StatementInspector {
+
+    static final List<String> statements = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+      statements.add(sql);
+      return sql;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package ch.uzh.ifi.hase.soprafs23.rest.mapper;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTOList;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * UserGetDTOListSerializerTest
+ * Tests that writing users directly produces the same JSON as mapping them to UserGetDTOs first.
+ */
+public class UserGetDTOListSerializerTest {
+
+  // configured like Spring Boot's ObjectMapper
+  private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+      .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+      .modules(new SimpleModule().addSerializer(new UserGetDTOListSerializer()))
+      .build();
+
+  @Test
+  public void serialize_users_sameJsonAsUserGetDTOs() throws Exception {
+    // given -> one complete user and one with all optional fields missing
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("Username");
+    user.setPassword("Password");
+    user.setToken("1");
+    user.setStatus(UserStatus.ONLINE);
+    user.setCreation_date(new Date(1_600_000_000_000L));
+    user.setBirthday(new Date(900_000_000_000L));
+    user.setAvatarHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+
+    User emptyUser = new User();
+
+    List<User> users = List.of(user, emptyUser);
+    List<UserGetDTO> userGetDTOs = new ArrayList<>();
+    for (User u : users) {
+      userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(u));
+    }
+
+    // when
+    String direct = objectMapper.writeValueAsString(new UserGetDTOList(users));
+
+    // then
+    assertEquals(objectMapper.writeValueAsString(userGetDTOs), direct);
+  }
+
+  @Test
+  public void serialize_dates_sameTextAsJackson() throws Exception {
+    // given -> dates before and after the epoch, at day boundaries, around the Gregorian cutover
+    // and out of the 4-digit year range
+    long[] timestamps = { 0L, -1L, 1L, 86_399_999L, -86_400_000L, 951_782_400_000L, 1_600_000_000_123L,
+        -12_219_292_800_000L, -12_219_292_800_001L, -62_135_596_800_000L, 253_402_300_799_999L,
+        253_402_300_800_000L, -62_167_219_200_001L };
+
+    for (ObjectMapper mapper : List.of(objectMapper,
+        objectMapper.copy().setTimeZone(TimeZone.getTimeZone("Europe/Zurich")),
+        objectMapper.copy().enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS))) {
+      for (long timestamp : timestamps) {
+        User user = new User();
+        user.setCreation_date(new Date(timestamp));
+
+        // when
+        String direct = mapper.writeValueAsString(new UserGetDTOList(List.of(user)));
+
+        // then
+        String expected = mapper.writeValueAsString(List.of(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user)));
+        assertEquals(expected, direct, "timestamp " + timestamp);
+      }
+    }
+  }
+}
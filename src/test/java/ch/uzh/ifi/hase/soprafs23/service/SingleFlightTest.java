@@ -0,0 +1,121 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+  private static final int CALLERS = 8;
+
+  private final SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void execute_concurrentSameKey_loaderRunsOnce() throws Exception {
+    // given -> a loader that blocks until every caller has been submitted
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+
+    // when
+    List<Future<String>> results = submitCallers(() -> {
+      loads.incrementAndGet();
+      await(release);
+      return "user";
+    });
+    waitForCoalescedCallers(CALLERS - 1);
+    release.countDown();
+
+    // then
+    for (Future<String> result : results) {
+      assertEquals("user", result.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(1, loads.get());
+    assertEquals(CALLERS - 1, singleFlight.getCoalescedCount());
+  }
+
+  @Test
+  public void execute_loaderFails_errorReachesAllCallers() throws Exception {
+    // given
+    CountDownLatch release = new CountDownLatch(1);
+    ResponseStatusException notFound = new ResponseStatusException(HttpStatus.NOT_FOUND, "User with id 1 was not found!");
+
+    // when
+    List<Future<String>> results = submitCallers(() -> {
+      await(release);
+      throw notFound;
+    });
+    waitForCoalescedCallers(CALLERS - 1);
+    release.countDown();
+
+    // then
+    for (Future<String> result : results) {
+      Exception e = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+      assertSame(notFound, e.getCause());
+    }
+  }
+
+  @Test
+  public void execute_afterCompletion_loadsAgain() {
+    AtomicInteger loads = new AtomicInteger();
+
+    singleFlight.execute(1L, () -> "first " + loads.incrementAndGet());
+    String second = singleFlight.execute(1L, () -> "second " + loads.incrementAndGet());
+
+    assertEquals("second 2", second);
+    assertEquals(0, singleFlight.getCoalescedCount());
+  }
+
+  @Test
+  public void execute_nullKey_loadsWithoutCoalescing() {
+    AtomicInteger loads = new AtomicInteger();
+
+    String value = singleFlight.execute(null, () -> "loaded " + loads.incrementAndGet());
+
+    assertEquals("loaded 1", value);
+    assertEquals(0, singleFlight.getCoalescedCount());
+  }
+
+  private List<Future<String>> submitCallers(Supplier<String> loader) {
+    List<Future<String>> results = new ArrayList<>();
+    for (int i = 0; i < CALLERS; i++) {
+      results.add(executor.submit(() -> singleFlight.execute(1L, loader)));
+    }
+    return results;
+  }
+
+  private void waitForCoalescedCallers(int expected) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (singleFlight.getCoalescedCount() < expected && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPatchDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the user directory follows the changes made through the services.
+ *
+ * @see UserDirectory
+ */
+@WebAppConfiguration
+@SpringBootTest
+public class UserDirectoryIntegrationTest {
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private UserDirectory userDirectory;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    entityManagerFactory.getCache().evictAll();
+    // other tests change the table behind the directory's back
+    userDirectory.rebuild();
+  }
+
+  @Test
+  public void createAndPatchUser_directoryUpdatedOnCommit() {
+    // given
+    User first = createUser("first");
+    User second = createUser("second");
+    assertEquals(2, userDirectory.count(UserStatus.ONLINE));
+
+    // when
+    UserPatchDTO patch = new UserPatchDTO();
+    patch.setUsername("renamed");
+    patch.setStatus(UserStatus.OFFLINE.name());
+    userService.patchUserProfile(patch, second.getId());
+
+    // then
+    UserDirectory.Batch batch = new UserDirectory.Batch(10);
+    assertEquals(-1, userDirectory.read(UserStatus.OFFLINE, 0, batch));
+    assertEquals(1, batch.size());
+    assertEquals(second.getId(), batch.getId(0));
+    assertEquals("renamed", batch.getUsername(0));
+    assertEquals(second.getCreation_date().getTime(), batch.getCreationDate(0));
+    assertEquals(1, userDirectory.count(UserStatus.ONLINE));
+    assertEquals(first.getId(), onlyOnline().getId(0));
+  }
+
+  @Test
+  public void rebuild_readsTable() {
+    // given
+    createUser("player");
+
+    // when
+    userDirectory.rebuild();
+
+    // then
+    assertEquals(1, userDirectory.size());
+    assertEquals("player", onlyOnline().getUsername(0));
+  }
+
+  private UserDirectory.Batch onlyOnline() {
+    UserDirectory.Batch batch = new UserDirectory.Batch(10);
+    userDirectory.read(UserStatus.ONLINE, 0, batch);
+    assertEquals(1, batch.size());
+    return batch;
+  }
+
+  private User createUser(String username) {
+    User user = new User();
+    user.setUsername(username);
+    user.setPassword("password");
+    return userService.createUser(user);
+  }
+}
@@ -0,0 +1,119 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.session.LocalSessionStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserDirectoryTest {
+
+  private final LocalSessionStore sessionStore = new LocalSessionStore();
+
+  private final UserDirectory directory = new UserDirectory(null, null, null, sessionStore);
+
+  @Test
+  public void read_byStatus_usersOfStatusInBatches() {
+    // given -> more users than the initial capacity, every third one offline
+    for (long id = 1; id <= 3000; id++) {
+      directory.onUserChanged(UserChangedEvent.created(user(id, "user-" + id, id % 3 == 0 ? UserStatus.OFFLINE : UserStatus.ONLINE)));
+    }
+
+    // when
+    List<Long> offline = new ArrayList<>();
+    UserDirectory.Batch batch = new UserDirectory.Batch(100);
+    int slot = 0;
+    while (slot >= 0) {
+      slot = directory.read(UserStatus.OFFLINE, slot, batch);
+      for (int i = 0; i < batch.size(); i++) {
+        assertEquals(UserStatus.OFFLINE, batch.getStatus(i));
+        assertEquals("user-" + batch.getId(i), batch.getUsername(i));
+        assertEquals(batch.getId(i) * 1000, batch.getCreationDate(i));
+        offline.add(batch.getId(i));
+      }
+    }
+
+    // then
+    assertEquals(3000, directory.size());
+    assertEquals(2000, directory.count(UserStatus.ONLINE));
+    assertEquals(1000, directory.count(UserStatus.OFFLINE));
+    assertEquals(1000, offline.size());
+    for (int i = 0; i < offline.size(); i++) {
+      assertEquals(3L * (i + 1), offline.get(i));
+    }
+  }
+
+  @Test
+  public void read_statusChangedOnOtherInstance_sharedStatusListed() {
+    // given -> user 2 went offline on another instance, which only the SessionStore knows
+    for (long id = 1; id <= 3; id++) {
+      directory.onUserChanged(UserChangedEvent.created(user(id, "user-" + id, UserStatus.ONLINE)));
+    }
+    sessionStore.putStatus(2L, UserStatus.OFFLINE);
+
+    // when
+    UserDirectory.Batch batch = new UserDirectory.Batch(10);
+    directory.read(null, 0, batch);
+    UserDirectory.Batch online = new UserDirectory.Batch(10);
+    directory.read(UserStatus.ONLINE, 0, online);
+
+    // then
+    assertEquals(3, batch.size());
+    assertEquals(UserStatus.OFFLINE, batch.getStatus(1));
+    assertEquals(2, online.size());
+    assertEquals(1L, online.getId(0));
+    assertEquals(3L, online.getId(1));
+    assertEquals("user-3", online.getUsername(1));
+  }
+
+  @Test
+  public void onUserChanged_renamesAndStatusChanges_followed() {
+    // given
+    for (long id = 1; id <= 10; id++) {
+      directory.onUserChanged(UserChangedEvent.created(user(id, "user-" + id, UserStatus.ONLINE)));
+    }
+
+    // when -> enough long renames to compact the username bytes several times
+    User renamed = user(5, "user-5", UserStatus.ONLINE);
+    for (int i = 0; i < 500; i++) {
+      UserChangedEvent.State previous = UserChangedEvent.State.of(renamed);
+      renamed.setUsername("renamed-" + i + "-" + "x".repeat(1000));
+      renamed.setStatus(i % 2 == 0 ? UserStatus.OFFLINE : UserStatus.ONLINE);
+      directory.onUserChanged(UserChangedEvent.changed(previous, renamed));
+    }
+
+    // then
+    UserDirectory.Batch batch = new UserDirectory.Batch(20);
+    assertEquals(-1, directory.read(null, 0, batch));
+    assertEquals(10, batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      assertEquals(i + 1, batch.getId(i));
+      assertEquals(i == 4 ? renamed.getUsername() : "user-" + (i + 1), batch.getUsername(i));
+    }
+    assertEquals(UserStatus.ONLINE, batch.getStatus(4));
+    assertEquals(10, directory.count(UserStatus.ONLINE));
+  }
+
+  @Test
+  public void getSummaries_invalidStatus_throwsException() {
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> directory.getSummaries("AWAY"));
+    assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+  }
+
+  private static User user(long id, String username, UserStatus status) {
+    User user = new User();
+    user.setId(id);
+    user.setUsername(username);
+    user.setStatus(status);
+    user.setCreation_date(new Date(id * 1000));
+    return user;
+  }
+}
@@ -1,76 +1,374 @@
-//package ch.uzh.ifi.hase.soprafs23.service;
-//
-//import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
-//import ch.uzh.ifi.hase.soprafs23.entity.User;
-//import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
-//import org.junit.jupiter.api.BeforeEach;
-//import org.junit.jupiter.api.Test;
-//import org.springframework.beans.factory.annotation.Autowired;
-//import org.springframework.beans.factory.annotation.Qualifier;
-//import org.springframework.boot.test.context.SpringBootTest;
-//import org.springframework.test.context.web.WebAppConfiguration;
-//import org.springframework.web.server.ResponseStatusException;
-//
-//import static org.junit.jupiter.api.Assertions.*;
-//
-///**
-// * Test class for the UserResource REST resource.
-// *
-// * @see UserService
-// */
-//@WebAppConfiguration
-//@SpringBootTest
-//public class UserServiceIntegrationTest {
-//
-//  @Qualifier("userRepository")
-//  @Autowired
-//  private UserRepository userRepository;
-//
-//  @Autowired
-//  private UserService userService;
-//
-//  @BeforeEach
-//  public void setup() {
-//    userRepository.deleteAll();
-//  }
-//
-//  @Test
-//  public void createUser_validInputs_success() {
-//    // given
-//    assertNull(userRepository.findByUsername("testUsername"));
-//
-//    User testUser = new User();
-//    testUser.setName("testName");
-//    testUser.setUsername("testUsername");
-//
-//    // when
-//    User createdUser = userService.createUser(testUser);
-//
-//    // then
-//    assertEquals(testUser.getId(), createdUser.getId());
-//    assertEquals(testUser.getName(), createdUser.getName());
-//    assertEquals(testUser.getUsername(), createdUser.getUsername());
-//    assertNotNull(createdUser.getToken());
-//    assertEquals(UserStatus.OFFLINE, createdUser.getStatus());
-//  }
-//
-//  @Test
-//  public void createUser_duplicateUsername_throwsException() {
-//    assertNull(userRepository.findByUsername("testUsername"));
-//
-//    User testUser = new User();
-//    testUser.setName("testName");
-//    testUser.setUsername("testUsername");
-//    User createdUser = userService.createUser(testUser);
-//
-//    // attempt to create second user with same username
-//    User testUser2 = new User();
-//
-//    // change the name but forget about the username
-//    testUser2.setName("testName2");
-//    testUser2.setUsername("testUsername");
-//
-//    // check that an error is thrown
-//    assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser2));
-//  }
-//}
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.audit.AuditEvent;
+import ch.uzh.ifi.hase.soprafs23.audit.AuditTrail;
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPatchDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs23.session.SessionStore;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the UserResource REST resource.
+ *
+ * @see UserService
+ */
+@WebAppConfiguration
+@SpringBootTest
+public class UserServiceIntegrationTest {
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private AuditTrail auditTrail;
+
+  @Autowired
+  private SessionStore sessionStore;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private Statistics statistics;
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    entityManagerFactory.getCache().evictAll();
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+  }
+
+  @Test
+  public void createUser_validInputs_success() {
+    // given
+    assertNull(userRepository.findByUsername("testUsername"));
+
+    User testUser = new User();
+    testUser.setPassword("testPassword");
+    testUser.setUsername("testUsername");
+
+    // when
+    User createdUser = userService.createUser(testUser);
+
+    // then
+    assertEquals(testUser.getId(), createdUser.getId());
+    assertEquals(testUser.getPassword(), createdUser.getPassword());
+    assertEquals(testUser.getUsername(), createdUser.getUsername());
+    assertNotNull(createdUser.getToken());
+    assertEquals(UserStatus.ONLINE, createdUser.getStatus());
+  }
+
+  @Test
+  public void createUser_rolledBack_nothingShared() {
+    User rolledBack = new User();
+    rolledBack.setPassword("testPassword");
+    rolledBack.setUsername("rolledBack");
+    User committed = new User();
+    committed.setPassword("testPassword");
+    committed.setUsername("committed");
+
+    // when -> the registration is part of a transaction that is rolled back
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+      userService.createUser(rolledBack);
+      assertNull(sessionStore.findUserId(rolledBack.getToken()), "written before the commit");
+      status.setRollbackOnly();
+    });
+    User created = userService.createUser(committed);
+
+    // then -> only the committed registration is in the SessionStore
+    assertNull(sessionStore.findUserId(rolledBack.getToken()));
+    assertNull(sessionStore.findStatus(rolledBack.getId()));
+    assertEquals(created.getId(), sessionStore.findUserId(created.getToken()));
+    assertEquals(UserStatus.ONLINE, sessionStore.findStatus(created.getId()));
+  }
+
+  @Test
+  public void createUser_duplicateUsername_throwsException() {
+    assertNull(userRepository.findByUsername("testUsername"));
+
+    User testUser = new User();
+    testUser.setPassword("testPassword");
+    testUser.setUsername("testUsername");
+    userService.createUser(testUser);
+
+    // attempt to create second user with same username
+    User testUser2 = new User();
+    testUser2.setPassword("testPassword2");
+    testUser2.setUsername("testUsername");
+
+    // check that an error is thrown
+    assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser2));
+  }
+
+  @Test
+  public void getUserProfile_repeatedRead_servedFromSecondLevelCache() {
+    // given -> a user whose profile has been read once
+    User createdUser = createUser("cachedUser");
+    userService.getUserProfile(createdUser.getId());
+    long statementsAfterFirstRead = statistics.getPrepareStatementCount();
+
+    // when
+    User profile = userService.getUserProfile(createdUser.getId());
+
+    // then -> no SQL was issued for the second read
+    assertEquals("cachedUser", profile.getUsername());
+    assertEquals(statementsAfterFirstRead, statistics.getPrepareStatementCount());
+    assertTrue(statistics.getSecondLevelCacheHitCount() > 0);
+  }
+
+  @Test
+  public void findByUsername_repeatedLookup_servedFromNaturalIdCache() {
+    // given
+    createUser("loginUser");
+    userService.findByUsername("loginUser");
+    long statementsAfterFirstLookup = statistics.getPrepareStatementCount();
+
+    // when
+    User found = userService.findByUsername("loginUser");
+
+    // then
+    assertNotNull(found);
+    assertEquals(statementsAfterFirstLookup, statistics.getPrepareStatementCount());
+    assertTrue(statistics.getNaturalIdCacheHitCount() > 0);
+  }
+
+  @Test
+  public void updateUserProfile_cachedUser_changesVisibleImmediately() {
+    // given -> the profile and the username lookup are both cached
+    User createdUser = createUser("oldName");
+    userService.getUserProfile(createdUser.getId());
+    userService.findByUsername("oldName");
+
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername("newName");
+    userPutDTO.setBirthday("01.02.2000");
+    userPutDTO.setStatus(UserStatus.OFFLINE.name());
+
+    // when
+    userService.updateUserProfile(userPutDTO, createdUser.getId());
+
+    // then
+    User profile = userService.getUserProfile(createdUser.getId());
+    assertEquals("newName", profile.getUsername());
+    assertEquals(UserStatus.OFFLINE, profile.getStatus());
+    assertNotNull(profile.getBirthday());
+    assertNull(userService.findByUsername("oldName"));
+    assertEquals(createdUser.getId(), userService.findByUsername("newName").getId());
+    assertEquals("newName", userRepository.findAll().get(0).getUsername());
+  }
+
+  @Test
+  public void updateUserProfile_takenUsername_conflict() {
+    // given -> a single shard, so only the username check rejects it before the unique index would
+    User createdUser = createUser("first");
+    createUser("second");
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername("second");
+    userPutDTO.setBirthday("01.02.2000");
+
+    // when
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> userService.updateUserProfile(userPutDTO, createdUser.getId()));
+
+    // then
+    assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+    User profile = userService.getUserProfile(createdUser.getId());
+    assertEquals("first", profile.getUsername());
+    assertNull(profile.getBirthday());
+  }
+
+  @Test
+  public void getUserProfiles_partlyCached_allFound() {
+    // given -> only the first user is in the second-level cache
+    User cachedUser = createUser("cachedUser");
+    User uncachedUser = createUser("uncachedUser");
+    entityManagerFactory.getCache().evict(User.class, uncachedUser.getId());
+    userService.getUserProfile(cachedUser.getId());
+
+    // when
+    Map<Long, User> found = userService.getUserProfiles(List.of(cachedUser.getId(), uncachedUser.getId(), -1L));
+
+    // then
+    assertEquals(2, found.size());
+    assertEquals("cachedUser", found.get(cachedUser.getId()).getUsername());
+    assertEquals("uncachedUser", found.get(uncachedUser.getId()).getUsername());
+  }
+
+  @Test
+  public void patchUserProfile_statusOnlyOnCachedUser_singleUpdateStatement() {
+    // given -> the profile is in the second-level cache
+    User createdUser = createUser("patchedUser");
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setBirthday("01.02.2000");
+    userService.updateUserProfile(userPutDTO, createdUser.getId());
+    userService.getUserProfile(createdUser.getId());
+    long statementsBefore = statistics.getPrepareStatementCount();
+
+    UserPatchDTO userPatchDTO = new UserPatchDTO();
+    userPatchDTO.setStatus(UserStatus.OFFLINE.name());
+
+    // when
+    userService.patchUserProfile(userPatchDTO, createdUser.getId());
+
+    // then -> no SELECT, just the UPDATE, and the absent members are untouched
+    assertEquals(statementsBefore + 1, statistics.getPrepareStatementCount());
+    User profile = userService.getUserProfile(createdUser.getId());
+    assertEquals(UserStatus.OFFLINE, profile.getStatus());
+    assertEquals("patchedUser", profile.getUsername());
+    assertNotNull(profile.getBirthday());
+  }
+
+  @Test
+  public void patchUserProfile_unchangedStatus_noStatement() {
+    // given
+    User createdUser = createUser("onlineUser");
+    userService.getUserProfile(createdUser.getId());
+    long statementsBefore = statistics.getPrepareStatementCount();
+
+    UserPatchDTO userPatchDTO = new UserPatchDTO();
+    userPatchDTO.setStatus(UserStatus.ONLINE.name());
+
+    // when
+    userService.patchUserProfile(userPatchDTO, createdUser.getId());
+
+    // then
+    assertEquals(statementsBefore, statistics.getPrepareStatementCount());
+  }
+
+  @Test
+  public void patchUserProfile_nullBirthdayAndTakenUsername() {
+    // given
+    User createdUser = createUser("first");
+    createUser("second");
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setBirthday("01.02.2000");
+    userService.updateUserProfile(userPutDTO, createdUser.getId());
+
+    UserPatchDTO removeBirthday = new UserPatchDTO();
+    removeBirthday.setBirthday(null);
+    UserPatchDTO takenUsername = new UserPatchDTO();
+    takenUsername.setUsername("second");
+
+    // when
+    userService.patchUserProfile(removeBirthday, createdUser.getId());
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> userService.patchUserProfile(takenUsername, createdUser.getId()));
+
+    // then
+    assertNull(userService.getUserProfile(createdUser.getId()).getBirthday());
+    assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+    assertEquals("first", userService.getUserProfile(createdUser.getId()).getUsername());
+  }
+
+  @Test
+  public void auditTrail_registrationLoginsAndChange_writtenInOrder() throws InterruptedException {
+    // given
+    User createdUser = createUser("auditedUser");
+    User login = new User();
+    login.setUsername("auditedUser");
+    login.setPassword("wrongPassword");
+    assertThrows(ResponseStatusException.class, () -> userService.getUser(login));
+    login.setPassword("testPassword");
+    userService.getUser(login);
+    UserPatchDTO userPatchDTO = new UserPatchDTO();
+    userPatchDTO.setStatus(UserStatus.OFFLINE.name());
+    userService.patchUserProfile(userPatchDTO, createdUser.getId());
+
+    // when -> the events are written asynchronously
+    List<AuditEvent> events = List.of();
+    for (int i = 0; i < 100 && events.size() < 4; i++) {
+      Thread.sleep(20);
+      events = auditTrail.read(0, 1000).stream()
+          .filter(event -> event.getUsername().equals("auditedUser"))
+          .collect(Collectors.toList());
+    }
+
+    // then
+    assertEquals(List.of(AuditEvent.Type.REGISTERED, AuditEvent.Type.LOGIN_FAILED, AuditEvent.Type.LOGGED_IN,
+        AuditEvent.Type.PROFILE_CHANGED), events.stream().map(AuditEvent::getType).collect(Collectors.toList()));
+    assertEquals("wrong password", events.get(1).getDetail());
+    assertEquals("status ONLINE -> OFFLINE", events.get(3).getDetail());
+    assertTrue(events.get(0).getSequence() < events.get(3).getSequence());
+  }
+
+  private User createUser(String username) {
+    User user = new User();
+    user.setPassword("testPassword");
+    user.setUsername(username);
+    return userService.createUser(user);
+  }
+
+  @Test
+  public void getUserPage_walkAllPages_everyMatchingUserOnceInOrder() {
+    // given -> users with the same creation date, so the pages have to continue by id
+    Date sameDate = new Date(1_600_000_000_000L);
+    for (int i = 0; i < 12; i++) {
+      User user = new User();
+      user.setUsername("paged" + i);
+      user.setPassword("password");
+      user = userService.createUser(user);
+      user.setCreation_date(i < 6 ? sameDate : new Date(sameDate.getTime() + i * 1000L));
+      if (i % 4 == 0) {
+        user.setStatus(UserStatus.OFFLINE);
+      }
+      userRepository.saveAndFlush(user);
+    }
+
+    // when
+    List<String> online = new ArrayList<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      UserPage page = userService.getUserPage("ONLINE", "creation_date,desc", cursor, 2);
+      page.getUsers().forEach(user -> online.add(user.getUsername()));
+      cursor = page.getNextCursor();
+      pages++;
+    } while (cursor != null);
+
+    // then -> newest first, users with the same creation date by descending id
+    assertEquals(List.of("paged11", "paged10", "paged9", "paged7", "paged6", "paged5", "paged3", "paged2", "paged1"),
+        online);
+    assertEquals(5, pages);
+    assertEquals(12, userService.getUserPage(null, "creation_date", null, 20).getUsers().size());
+  }
+
+  @Test
+  public void getUserPage_invalidSortOrCursor_throwsException() {
+    ResponseStatusException sort = assertThrows(ResponseStatusException.class,
+        () -> userService.getUserPage(null, "username,asc", null, 10));
+    assertEquals(HttpStatus.BAD_REQUEST, sort.getStatus());
+    ResponseStatusException cursor = assertThrows(ResponseStatusException.class,
+        () -> userService.getUserPage(null, null, "not-a-cursor", 10));
+    assertEquals(HttpStatus.BAD_REQUEST, cursor.getStatus());
+  }
+}
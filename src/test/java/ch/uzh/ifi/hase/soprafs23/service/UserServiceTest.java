@@ -1,16 +1,24 @@
 package ch.uzh.ifi.hase.soprafs23.service;
 
+import ch.uzh.ifi.hase.soprafs23.audit.AuditTrail;
 import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs23.entity.User;
 import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.session.SessionStore;
+import ch.uzh.ifi.hase.soprafs23.sharding.ShardRouter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class UserServiceTest {
@@ -18,6 +26,18 @@ public class UserServiceTest {
   @Mock
   private UserRepository userRepository;
 
+  @Mock
+  private SessionStore sessionStore;
+
+  @Mock
+  private ApplicationEventPublisher eventPublisher;
+
+  @Mock
+  private AuditTrail auditTrail;
+
+  @Mock
+  private ShardRouter shardRouter;
+
   @InjectMocks
   private UserService userService;
 
@@ -36,6 +56,8 @@ public class UserServiceTest {
     // when -> any object is being saved in the userRepository -> return the dummy
     // testUser
     Mockito.when(userRepository.save(Mockito.any())).thenReturn(testUser);
+    // lookups by username hand over the id and load the user by id, see UserService.findByUsername
+    Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
   }
 
   @Test
@@ -52,6 +74,12 @@ public class UserServiceTest {
     assertEquals(testUser.getUsername(), createdUser.getUsername());
     assertNotNull(createdUser.getToken());
     assertEquals(UserStatus.ONLINE, createdUser.getStatus());
+    Mockito.verify(sessionStore).putSession(createdUser.getToken(), createdUser.getId());
+    Mockito.verify(sessionStore).putStatus(createdUser.getId(), UserStatus.ONLINE);
+    Mockito.verify(eventPublisher).publishEvent(Mockito.argThat((Object event) ->
+        event instanceof UserChangedEvent && ((UserChangedEvent) event).getPrevious() == null
+            && ((UserChangedEvent) event).getCurrent().getStatus() == UserStatus.ONLINE));
+    Mockito.verify(auditTrail).registered(createdUser);
   }
 
   @Test
@@ -82,4 +110,35 @@ public class UserServiceTest {
     assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser));
   }
 
+  @Test
+  public void getUser_wrongPassword_failedLoginAudited() {
+    // given
+    Mockito.when(userRepository.findByUsername("testUsername")).thenReturn(testUser);
+    User login = new User();
+    login.setUsername("testUsername");
+    login.setPassword("wrongPassword");
+
+    // when
+    assertThrows(ResponseStatusException.class, () -> userService.getUser(login));
+
+    // then
+    Mockito.verify(auditTrail).loginFailed("testUsername", 1L, "wrong password");
+    Mockito.verify(auditTrail, Mockito.never()).loggedIn(Mockito.any());
+  }
+
+  @Test
+  public void getUserProfiles_singleQuery_missingIdsAbsent() {
+    // given -> only the user with id 1 exists
+    Mockito.when(userRepository.findAllByIdCacheFirst(Mockito.any())).thenReturn(List.of(testUser));
+
+    // when
+    Map<Long, User> found = userService.getUserProfiles(List.of(1L, 2L));
+
+    // then -> one lookup for both ids, the unknown id is left out
+    Mockito.verify(userRepository, Mockito.times(1)).findAllByIdCacheFirst(Mockito.any());
+    Mockito.verify(userRepository, Mockito.never()).findById(Mockito.any());
+    assertEquals(1, found.size());
+    assertEquals(testUser, found.get(1L));
+  }
+
 }
@@ -0,0 +1,153 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserStatsGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the statistics read model follows the changes made through the services.
+ *
+ * @see UserStatistics
+ */
+@WebAppConfiguration
+@SpringBootTest
+public class UserStatisticsIntegrationTest {
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private UserStatistics userStatistics;
+
+  @Autowired
+  private UserDirectory userDirectory;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    entityManagerFactory.getCache().evictAll();
+    // other tests change the table behind the models' back
+    userStatistics.rebuild();
+    userDirectory.rebuild();
+  }
+
+  @Test
+  public void createUser_countedAsOnlineRegistrationOfToday() {
+    // when
+    createUser("first");
+    createUser("second");
+
+    // then
+    UserStatsGetDTO stats = userStatistics.getStatistics(1);
+    assertEquals(2, stats.getTotal());
+    assertEquals(2, stats.getOnline());
+    assertEquals(0, stats.getOffline());
+    assertEquals(2L, stats.getRegistrationsPerDay().get(LocalDate.now().toString()));
+    assertEquals(2, stats.getUnknownBirthdays());
+  }
+
+  @Test
+  public void updateUserProfile_statusAndBirthday_movedBetweenBuckets() {
+    // given
+    User user = createUser("player");
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setBirthday("15.03.2000");
+    userPutDTO.setStatus(UserStatus.OFFLINE.name());
+
+    // when
+    userService.updateUserProfile(userPutDTO, user.getId());
+
+    // then
+    UserStatsGetDTO stats = userStatistics.getStatistics(30);
+    assertEquals(1, stats.getTotal());
+    assertEquals(0, stats.getOnline());
+    assertEquals(1, stats.getOffline());
+    assertEquals(1L, stats.getBirthdayMonths().get("MARCH"));
+    assertEquals(0, stats.getUnknownBirthdays());
+  }
+
+  @Test
+  public void onUserChanged_sameChangeCommittedTwice_countedOnce() {
+    // given -> two transactions both saw the user without birthday and set one
+    User user = createUser("player");
+    UserChangedEvent.State withoutBirthday = UserChangedEvent.State.of(user);
+    user.setBirthday(new Date(0));
+
+    // when
+    userStatistics.onUserChanged(UserChangedEvent.changed(withoutBirthday, user));
+    userStatistics.onUserChanged(UserChangedEvent.changed(withoutBirthday, user));
+
+    // then
+    UserStatsGetDTO stats = userStatistics.getStatistics(30);
+    assertEquals(1, stats.getTotal());
+    assertEquals(0, stats.getUnknownBirthdays());
+    assertEquals(1L, stats.getBirthdayMonths().values().stream().mapToLong(Long::longValue).sum());
+  }
+
+  @Test
+  public void createUser_duplicateUsername_notCounted() {
+    // given
+    createUser("taken");
+
+    // when
+    assertThrows(ResponseStatusException.class, () -> createUser("taken"));
+
+    // then
+    assertEquals(1, userStatistics.getStatistics(30).getTotal());
+  }
+
+  @Test
+  public void rebuild_matchesIncrementalModel() {
+    // given
+    User user = createUser("player");
+    User other = createUser("other");
+    other.setStatus(UserStatus.OFFLINE);
+    other.setBirthday(new Date(0));
+    userRepository.saveAndFlush(other);
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setBirthday("01.12.1999");
+    userService.updateUserProfile(userPutDTO, user.getId());
+    UserStatsGetDTO incremental = userStatistics.getStatistics(30);
+
+    // when
+    userStatistics.rebuild();
+    userDirectory.rebuild();
+
+    // then -> the direct save of other is only seen by the rebuilds
+    UserStatsGetDTO rebuilt = userStatistics.getStatistics(30);
+    assertEquals(2, rebuilt.getTotal());
+    assertEquals(1, rebuilt.getOffline());
+    assertEquals(incremental.getBirthdayMonths().get("DECEMBER"), rebuilt.getBirthdayMonths().get("DECEMBER"));
+    assertEquals(incremental.getRegistrationsPerDay(), rebuilt.getRegistrationsPerDay());
+    assertEquals(0, rebuilt.getUnknownBirthdays());
+  }
+
+  private User createUser(String username) {
+    User user = new User();
+    user.setPassword("testPassword");
+    user.setUsername(username);
+    return userService.createUser(user);
+  }
+}
@@ -0,0 +1,186 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserImportResultDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trips through the import/export pipeline against the in-memory database.
+ *
+ * @see UserTransferService
+ */
+@WebAppConfiguration
+@SpringBootTest(properties = "users.transfer.chunk-size=3")
+public class UserTransferServiceIntegrationTest {
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserTransferService userTransferService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    entityManagerFactory.getCache().evictAll();
+  }
+
+  @Test
+  public void exportThenImport_ndjson_restoresAllUsers() {
+    // given -> more users than fit into one chunk
+    for (int i = 0; i < 7; i++) {
+      saveUser("user" + i, UserStatus.values()[i % 2]);
+    }
+    byte[] exported = export(UserTransferService.Format.NDJSON);
+    userRepository.deleteAll();
+
+    // when
+    UserImportResultDTO result = userTransferService.importUsers(UserTransferService.Format.NDJSON,
+        new ByteArrayInputStream(exported), false);
+
+    // then
+    assertEquals(7, new String(exported, StandardCharsets.UTF_8).split("\n").length);
+    assertEquals(7, result.getRows());
+    assertEquals(7, result.getInserted());
+    assertEquals(0, result.getUpdated());
+    assertEquals(3, result.getChunks());
+    assertEquals(7, userRepository.count());
+    User restored = userRepository.findByUsername("user2");
+    assertEquals(UserStatus.ONLINE, restored.getStatus());
+    assertEquals("token-user2", restored.getToken());
+    assertNotNull(restored.getCreation_date());
+  }
+
+  @Test
+  public void exportThenImport_csvWithSpecialCharacters_roundTrips() {
+    // given
+    User user = saveUser("quoted, \"user\"", UserStatus.OFFLINE);
+    user.setPassword("line\nbreak");
+    user.setBirthday(new Date(0));
+    userRepository.saveAndFlush(user);
+    byte[] exported = export(UserTransferService.Format.CSV);
+    userRepository.deleteAll();
+
+    // when
+    userTransferService.importUsers(UserTransferService.Format.CSV, new ByteArrayInputStream(exported), false);
+
+    // then
+    User restored = userRepository.findByUsername("quoted, \"user\"");
+    assertEquals("line\nbreak", restored.getPassword());
+    assertEquals(new Date(0), restored.getBirthday());
+    assertEquals(UserStatus.OFFLINE, restored.getStatus());
+  }
+
+  @Test
+  public void importUsers_existingUsername_updatesProfileKeepsCredentials() {
+    // given
+    User existing = saveUser("existing", UserStatus.ONLINE);
+    String ndjson = "{\"username\":\"existing\",\"password\":\"newPassword\",\"token\":\"newToken\",\"status\":\"OFFLINE\"}\n"
+        + "{\"username\":\"new\",\"password\":\"password\"}\n";
+
+    // when
+    UserImportResultDTO result = userTransferService.importUsers(UserTransferService.Format.NDJSON,
+        new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), false);
+
+    // then
+    assertEquals(1, result.getInserted());
+    assertEquals(1, result.getUpdated());
+    User updated = userRepository.findById(existing.getId()).orElseThrow();
+    assertEquals("testPassword", updated.getPassword());
+    assertEquals(existing.getToken(), updated.getToken());
+    assertEquals(UserStatus.OFFLINE, updated.getStatus());
+    User inserted = userRepository.findByUsername("new");
+    assertNotNull(inserted.getToken());
+    assertEquals(UserStatus.OFFLINE, inserted.getStatus());
+  }
+
+  @Test
+  public void importUsers_recordWithoutBirthday_keepsBirthday() {
+    // given
+    User existing = saveUser("existing", UserStatus.ONLINE);
+    existing.setBirthday(new Date(0));
+    userRepository.saveAndFlush(existing);
+    String ndjson = "{\"username\":\"existing\",\"password\":\"password\",\"status\":\"OFFLINE\"}\n";
+
+    // when
+    userTransferService.importUsers(UserTransferService.Format.NDJSON,
+        new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), false);
+
+    // then
+    User updated = userRepository.findById(existing.getId()).orElseThrow();
+    assertEquals(new Date(0), updated.getBirthday());
+    assertEquals(UserStatus.OFFLINE, updated.getStatus());
+  }
+
+  @Test
+  public void importUsers_overwriteCredentials_replacesPasswordAndToken() {
+    // given
+    User existing = saveUser("existing", UserStatus.ONLINE);
+    String ndjson = "{\"username\":\"existing\",\"password\":\"newPassword\",\"token\":\"newToken\"}\n";
+
+    // when
+    userTransferService.importUsers(UserTransferService.Format.NDJSON,
+        new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), true);
+
+    // then
+    User updated = userRepository.findById(existing.getId()).orElseThrow();
+    assertEquals("newPassword", updated.getPassword());
+    assertEquals("newToken", updated.getToken());
+  }
+
+  @Test
+  public void importUsers_invalidRecord_keepsCommittedChunks() {
+    // given -> the fifth record has no password, the first chunk of three is already committed
+    String ndjson = "{\"username\":\"a\",\"password\":\"p\"}\n{\"username\":\"b\",\"password\":\"p\"}\n"
+        + "{\"username\":\"c\",\"password\":\"p\"}\n{\"username\":\"d\",\"password\":\"p\"}\n"
+        + "{\"username\":\"e\"}\n";
+
+    // when
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> userTransferService.importUsers(UserTransferService.Format.NDJSON,
+            new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), false));
+
+    // then
+    assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+    assertTrue(exception.getReason().startsWith("Record 5 could not be read, 3 users were imported before it"));
+    assertEquals(3, userRepository.count());
+  }
+
+  private byte[] export(UserTransferService.Format format) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    userTransferService.exportUsers(format, out);
+    return out.toByteArray();
+  }
+
+  private User saveUser(String username, UserStatus status) {
+    User user = new User();
+    user.setUsername(username);
+    user.setPassword("testPassword");
+    user.setToken("token-" + username);
+    user.setStatus(status);
+    user.setCreation_date(new Date());
+    return userRepository.saveAndFlush(user);
+  }
+}
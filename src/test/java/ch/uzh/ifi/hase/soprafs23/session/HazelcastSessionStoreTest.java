@@ -0,0 +1,114 @@
+package ch.uzh.ifi.hase.soprafs23.session;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HazelcastSessionStoreTest
+ * Runs two embedded Hazelcast members in one JVM, standing in for two server instances,
+ * and checks that sessions and presence written on one are visible on the other.
+ */
+public class HazelcastSessionStoreTest {
+
+  private static HazelcastInstance firstMember;
+
+  private static HazelcastInstance secondMember;
+
+  private static HazelcastSessionStore firstInstance;
+
+  private static HazelcastSessionStore secondInstance;
+
+  @BeforeAll
+  public static void startCluster() {
+    // a random cluster name keeps the test away from other members on this machine
+    String clusterName = "session-store-test-" + UUID.randomUUID();
+    firstMember = Hazelcast.newHazelcastInstance(createConfig(clusterName));
+    secondMember = Hazelcast.newHazelcastInstance(createConfig(clusterName));
+
+    // a long batch interval, the tests flush explicitly
+    firstInstance = new HazelcastSessionStore(firstMember, 60_000);
+    secondInstance = new HazelcastSessionStore(secondMember, 60_000);
+  }
+
+  @AfterAll
+  public static void stopCluster() {
+    firstInstance.close();
+    secondInstance.close();
+    secondMember.shutdown();
+    firstMember.shutdown();
+  }
+
+  private static Config createConfig(String clusterName) {
+    // without a port the members are looked for on the ports following the configured one
+    return HazelcastSessionStoreConfiguration.createConfig(clusterName, 5801, List.of("127.0.0.1"));
+  }
+
+  @Test
+  public void cluster_formed() {
+    assertEquals(2, firstMember.getCluster().getMembers().size());
+  }
+
+  @Test
+  public void putSession_beforeFlush_visibleOnlyLocally() throws Exception {
+    // when
+    firstInstance.putSession("pending-token", 1L);
+
+    // then
+    assertEquals(1L, firstInstance.findUserId("pending-token"));
+    assertNull(secondInstance.findUserId("pending-token"));
+
+    firstInstance.flush();
+    awaitEquals(1L, () -> secondInstance.findUserId("pending-token"));
+  }
+
+  @Test
+  public void putStatus_afterFlush_visibleOnOtherInstance() throws Exception {
+    // given
+    firstInstance.putSession("token", 2L);
+    firstInstance.putStatus(2L, UserStatus.ONLINE);
+
+    // when
+    firstInstance.flush();
+
+    // then
+    awaitEquals(2L, () -> secondInstance.findUserId("token"));
+    awaitEquals(UserStatus.ONLINE, () -> secondInstance.findStatus(2L));
+  }
+
+  @Test
+  public void putStatus_changedOnOtherInstance_nearCacheInvalidated() throws Exception {
+    // given -> the second instance has read (and near-cached) the status
+    firstInstance.putStatus(3L, UserStatus.ONLINE);
+    firstInstance.flush();
+    awaitEquals(UserStatus.ONLINE, () -> secondInstance.findStatus(3L));
+
+    // when
+    firstInstance.putStatus(3L, UserStatus.OFFLINE);
+    firstInstance.flush();
+
+    // then
+    awaitEquals(UserStatus.OFFLINE, () -> secondInstance.findStatus(3L));
+  }
+
+  /**
+   * Near cache invalidations reach the other member asynchronously.
+   */
+  private static void awaitEquals(Object expected, Supplier<Object> actual) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (!expected.equals(actual.get()) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, actual.get());
+  }
+}
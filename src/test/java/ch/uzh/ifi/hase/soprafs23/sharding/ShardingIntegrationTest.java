@@ -0,0 +1,258 @@
+package ch.uzh.ifi.hase.soprafs23.sharding;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserImportResultDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPatchDTO;
+import ch.uzh.ifi.hase.soprafs23.service.UserPage;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import ch.uzh.ifi.hase.soprafs23.service.UserStatistics;
+import ch.uzh.ifi.hase.soprafs23.service.UserTransferService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The user service on three shards, each an own in-memory database.
+ */
+@SpringBootTest(properties = {
+    "users.sharding.enabled=true",
+    "users.sharding.urls=jdbc:h2:mem:shard0,jdbc:h2:mem:shard1,jdbc:h2:mem:shard2"
+})
+public class ShardingIntegrationTest {
+
+  private static final int USERS = 30;
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private ShardRouter shardRouter;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private UserTransferService userTransferService;
+
+  @Autowired
+  private UserStatistics userStatistics;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private final List<User> users = new ArrayList<>();
+
+  @BeforeEach
+  public void setup() {
+    shardRouter.forEachShard(shard -> {
+      userRepository.deleteAll();
+      jdbcTemplate.update("delete from USERNAME_ROUTE");
+    });
+    entityManagerFactory.getCache().evictAll();
+    users.clear();
+    for (int i = 0; i < USERS; i++) {
+      User user = new User();
+      user.setUsername("shardUser-" + i);
+      user.setPassword("password");
+      users.add(userService.createUser(user));
+    }
+  }
+
+  @AfterEach
+  public void tearDown() {
+    // the cache regions are shared with the contexts of the other tests
+    entityManagerFactory.getCache().evictAll();
+  }
+
+  @Test
+  public void createUser_storedOnHomeShard_idNamesShard() {
+    int[] stored = new int[3];
+    for (int shard = 0; shard < 3; shard++) {
+      // straight from the database of the shard, findAll would answer from the query cache
+      List<Map<String, Object>> rows = ShardContext.call(shard,
+          () -> jdbcTemplate.queryForList("select id, username from USER"));
+      stored[shard] = rows.size();
+      for (Map<String, Object> row : rows) {
+        String username = (String) row.get("USERNAME");
+        assertEquals(shard, shardRouter.shardOf(((Number) row.get("ID")).longValue()), username);
+        assertEquals(shard, shardRouter.homeShardOf(username), username);
+      }
+    }
+
+    assertEquals(USERS, stored[0] + stored[1] + stored[2]);
+    for (int count : stored) {
+      assertTrue(count > 0, "a shard without users: " + count);
+    }
+  }
+
+  @Test
+  public void readsAcrossShards_everyUserFound() {
+    // every user can log in and is found by id, singly and in bulk
+    for (User user : users) {
+      User login = new User();
+      login.setUsername(user.getUsername());
+      login.setPassword("password");
+      assertEquals(user.getId(), userService.getUser(login).getId());
+      assertEquals(user.getUsername(), userService.getUserProfile(user.getId()).getUsername());
+    }
+    List<Long> ids = users.stream().map(User::getId).collect(Collectors.toList());
+    assertEquals(USERS, userService.getUserProfiles(ids).size());
+    ids.sort(null);
+    assertEquals(ids, userService.getUsers().stream().map(User::getId).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void getUserPage_mergedInCreationOrder() {
+    List<Long> read = new ArrayList<>();
+    String cursor = null;
+    do {
+      UserPage page = userService.getUserPage(UserStatus.ONLINE.name(), "creation_date", cursor, 7);
+      page.getUsers().forEach(user -> read.add(user.getId()));
+      cursor = page.getNextCursor();
+    } while (cursor != null);
+
+    // users created in the same millisecond are ordered by id
+    List<Long> sorted = users.stream()
+        .sorted(Comparator.comparing(User::getCreation_date).thenComparing(User::getId))
+        .map(User::getId).collect(Collectors.toList());
+    assertEquals(sorted, read);
+  }
+
+  @Test
+  public void patchUsername_userStaysOnShard_uniqueAcrossShards() {
+    User user = users.get(0);
+    // a username whose home is another shard than the one of the user
+    String renamed = usernameOnOtherShard(user, "renamed-");
+    UserPatchDTO patch = new UserPatchDTO();
+    patch.setUsername(renamed);
+    userService.patchUserProfile(patch, user.getId());
+    entityManagerFactory.getCache().evictAll();
+
+    // the home shard of the new username routes to the user, which is all a lookup asks
+    assertEquals(Map.of(shardRouter.homeShardOf(renamed), List.of(user.getId())), routes(renamed));
+    assertEquals(shardRouter.shardOf(user.getId()), shardRouter.locate(renamed));
+    assertEquals(user.getId(), shardRouter.findUserId(renamed));
+
+    User login = new User();
+    login.setUsername(renamed);
+    login.setPassword("password");
+    assertEquals(user.getId(), userService.getUser(login).getId());
+
+    // taken on another shard, both by renaming and by registering
+    User other = users.stream()
+        .filter(candidate -> shardRouter.shardOf(candidate.getId()) != shardRouter.shardOf(user.getId()))
+        .findFirst().orElseThrow();
+    UserPatchDTO conflicting = new UserPatchDTO();
+    conflicting.setUsername(renamed);
+    ResponseStatusException renameConflict = assertThrows(ResponseStatusException.class,
+        () -> userService.patchUserProfile(conflicting, other.getId()));
+    assertEquals(HttpStatus.CONFLICT, renameConflict.getStatus());
+
+    User duplicate = new User();
+    duplicate.setUsername(renamed);
+    duplicate.setPassword("password");
+    ResponseStatusException registerConflict = assertThrows(ResponseStatusException.class,
+        () -> userService.createUser(duplicate));
+    assertEquals(HttpStatus.CONFLICT, registerConflict.getStatus());
+
+    // renamed again, the route of the former username is removed
+    String renamedAgain = usernameOnOtherShard(user, "renamed-again-");
+    UserPatchDTO again = new UserPatchDTO();
+    again.setUsername(renamedAgain);
+    userService.patchUserProfile(again, user.getId());
+    assertEquals(Map.of(), routes(renamed));
+    assertEquals(1, routes(renamedAgain).size());
+    assertNull(shardRouter.findUserId(renamed));
+  }
+
+  @Test
+  public void patchUsername_rolledBack_routeRemoved() {
+    User user = users.get(0);
+    String renamed = usernameOnOtherShard(user, "rolled-back-");
+    UserPatchDTO patch = new UserPatchDTO();
+    patch.setUsername(renamed);
+
+    ShardContext.call(shardRouter.shardOf(user.getId()), () -> new TransactionTemplate(transactionManager).execute(status -> {
+      userService.patchUserProfile(patch, user.getId());
+      status.setRollbackOnly();
+      return null;
+    }));
+
+    assertEquals(Map.of(), routes(renamed));
+    assertNull(shardRouter.findUserId(renamed));
+  }
+
+  private String usernameOnOtherShard(User user, String prefix) {
+    for (int i = 0; ; i++) {
+      if (shardRouter.homeShardOf(prefix + i) != shardRouter.shardOf(user.getId())) {
+        return prefix + i;
+      }
+    }
+  }
+
+  // the user ids routed to from this username, by shard
+  private Map<Integer, List<Long>> routes(String username) {
+    Map<Integer, List<Long>> routes = new HashMap<>();
+    for (int shard = 0; shard < 3; shard++) {
+      List<Long> ids = ShardContext.call(shard, () -> jdbcTemplate.queryForList(
+          "select user_id from USERNAME_ROUTE where username = ?", Long.class, username));
+      if (!ids.isEmpty()) {
+        routes.put(shard, ids);
+      }
+    }
+    return routes;
+  }
+
+  @Test
+  public void exportImportAndStatistics_coverAllShards() {
+    ByteArrayOutputStream exported = new ByteArrayOutputStream();
+    assertEquals(USERS, userTransferService.exportUsers(UserTransferService.Format.NDJSON, exported));
+    userStatistics.rebuild();
+    assertEquals(USERS, userStatistics.getStatistics(1).getTotal());
+
+    // importing the export again updates every user on its shard instead of adding users
+    UserImportResultDTO result = userTransferService.importUsers(UserTransferService.Format.NDJSON,
+        new ByteArrayInputStream(exported.toByteArray()), false);
+    assertEquals(USERS, result.getUpdated());
+    assertEquals(USERS, userService.getUsers().size());
+  }
+
+  @Test
+  public void getUserProfiles_unknownIds_absent() {
+    List<Long> ids = List.of(users.get(0).getId(), users.get(1).getId(), 999_999L, 1_000_000L, 1_000_001L);
+
+    Map<Long, User> found = userService.getUserProfiles(ids);
+
+    assertEquals(Map.of(users.get(0).getId(), users.get(0).getUsername(), users.get(1).getId(), users.get(1).getUsername()),
+        found.values().stream().collect(Collectors.toMap(User::getId, User::getUsername)));
+  }
+}
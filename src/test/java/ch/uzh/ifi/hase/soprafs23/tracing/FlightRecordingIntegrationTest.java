@@ -0,0 +1,140 @@
+package ch.uzh.ifi.hase.soprafs23.tracing;
+
+import ch.uzh.ifi.hase.soprafs23.admin.AdminTokenFilter;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import javax.persistence.EntityManagerFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Records the custom JFR events through the /admin/jfr endpoints and reads them back.
+ *
+ * @see FlightRecordingService
+ */
+@SpringBootTest(properties = "admin.token=" + FlightRecordingIntegrationTest.ADMIN_TOKEN)
+@AutoConfigureMockMvc
+public class FlightRecordingIntegrationTest {
+
+  static final String ADMIN_TOKEN = "test-admin-token";
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private FlightRecordingService flightRecordingService;
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    entityManagerFactory.getCache().evictAll();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    flightRecordingService.close();
+  }
+
+  @Test
+  public void recording_createAndReadUser_emitsEventsOfEveryLayer() throws Exception {
+    // given
+    mockMvc.perform(adminPost("/admin/jfr/start").param("settings", "default"))
+        .andExpect(status().isNoContent());
+
+    // when
+    String created = mockMvc.perform(post("/users")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"username\":\"traced\",\"password\":\"password\"}"))
+        .andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+    long id = Long.parseLong(created.replaceAll(".*\"id\":(\\d+).*", "$1"));
+    mockMvc.perform(get("/users/{id}", id)).andExpect(status().isOk());
+    mockMvc.perform(get("/users/{id}", -1)).andExpect(status().isNotFound());
+
+    MvcResult stopped = mockMvc.perform(adminPost("/admin/jfr/stop")).andReturn();
+    byte[] recording = mockMvc.perform(asyncDispatch(stopped)).andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray();
+
+    // then
+    List<RecordedEvent> events = read(recording);
+    assertFalse(flightRecordingService.isRecording());
+
+    List<RecordedEvent> requests = ofType(events, "ch.uzh.ifi.hase.soprafs23.Request");
+    RecordedEvent profileRequest = requests.stream()
+        .filter(e -> e.getLong("userId") == id).findFirst().orElseThrow();
+    assertEquals("/users/{id}", profileRequest.getString("endpoint"));
+    assertEquals("GET", profileRequest.getString("method"));
+    assertEquals(200, profileRequest.getInt("status"));
+    assertEquals("ok", profileRequest.getString("outcome"));
+    RecordedEvent missingRequest = requests.stream()
+        .filter(e -> e.getLong("userId") == -1).findFirst().orElseThrow();
+    assertEquals(404, missingRequest.getInt("status"));
+    assertEquals("ResponseStatusException", missingRequest.getString("outcome"));
+
+    assertTrue(ofType(events, "ch.uzh.ifi.hase.soprafs23.Service").stream()
+        .anyMatch(e -> e.getString("className").equals("UserService")
+            && e.getString("method").equals("createUser") && e.getLong("userId") == id));
+    assertTrue(ofType(events, "ch.uzh.ifi.hase.soprafs23.Repository").stream()
+        .anyMatch(e -> e.getString("className").equals("UserRepository") && e.getString("method").equals("save")));
+    assertTrue(ofType(events, "ch.uzh.ifi.hase.soprafs23.TransactionCommit").stream()
+        .anyMatch(e -> e.getString("name").endsWith("UserService.createUser") && e.getString("outcome").equals("committed")));
+  }
+
+  @Test
+  public void start_alreadyRunning_conflict() throws Exception {
+    flightRecordingService.start("default", null);
+
+    mockMvc.perform(adminPost("/admin/jfr/start")).andExpect(status().isConflict());
+  }
+
+  @Test
+  public void stop_notRunning_conflict() throws Exception {
+    mockMvc.perform(adminPost("/admin/jfr/stop")).andExpect(status().isConflict());
+  }
+
+  private static List<RecordedEvent> read(byte[] recording) throws Exception {
+    Path file = Files.createTempFile("test-", ".jfr");
+    try {
+      Files.write(file, recording);
+      return RecordingFile.readAllEvents(file);
+    }
+    finally {
+      Files.delete(file);
+    }
+  }
+
+  private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+    return events.stream().filter(e -> e.getEventType().getName().equals(name)).collect(Collectors.toList());
+  }
+
+  private static MockHttpServletRequestBuilder adminPost(String path) {
+    return post(path).header(AdminTokenFilter.HEADER, ADMIN_TOKEN);
+  }
+}